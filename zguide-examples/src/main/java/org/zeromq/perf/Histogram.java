@@ -0,0 +1,104 @@
+package org.zeromq.perf;
+
+import java.io.PrintStream;
+
+/**
+ * Log-linear histogram of latencies, printed in the layout of HdrHistogram's percentile
+ * distribution so results line up with those of other tools.
+ * <p>
+ * Values are kept to 7 significant bits, a relative error below 1%, in a fixed array of counters:
+ * recording never allocates.
+ * </p>
+ */
+final class Histogram {
+  private static final int SUB_BUCKET_BITS = 7;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int HALF = SUB_BUCKETS / 2;
+  private static final double[] PERCENTILES =
+      {0, 50, 75, 87.5, 90, 93.75, 96.875, 99, 99.9, 99.99, 99.999, 100};
+
+  private final long[] counts = new long[(64 - SUB_BUCKET_BITS + 1) * HALF + HALF];
+  private long totalCount;
+  private long max;
+  private double sum;
+  private double sumOfSquares;
+
+  void record(final long value) {
+    counts[index(value)]++;
+    totalCount++;
+    max = Math.max(max, value);
+    sum += value;
+    sumOfSquares += (double) value * value;
+  }
+
+  long totalCount() {
+    return totalCount;
+  }
+
+  /**
+   * @return the highest value equivalent to the recorded values at the percentile
+   */
+  long valueAtPercentile(final double percentile) {
+    final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * totalCount));
+    long seen = 0;
+    for (int i = 0; i < counts.length; i++) {
+      seen += counts[i];
+      if (seen >= rank) {
+        return Math.min(highestEquivalent(i), max);
+      }
+    }
+    return max;
+  }
+
+  /**
+   * Prints the distribution, scaling values by the ratio (e.g. 1000.0 to go from nanoseconds to
+   * microseconds).
+   */
+  void print(final PrintStream out, final double scalingRatio) {
+    out.printf("%12s %14s %10s %14s%n%n", "Value", "Percentile", "TotalCount", "1/(1-Percentile)");
+    for (double percentile : PERCENTILES) {
+      final long value = valueAtPercentile(percentile);
+      final double fraction = percentile / 100;
+      final long count = countAtOrBelow(value);
+      if (fraction < 1) {
+        out.printf("%12.3f %2.12f %10d %14.2f%n", value / scalingRatio, fraction, count,
+            1 / (1 - fraction));
+      } else {
+        out.printf("%12.3f %2.12f %10d%n", value / scalingRatio, fraction, count);
+      }
+    }
+    final double mean = totalCount == 0 ? 0 : sum / totalCount;
+    final double variance = totalCount == 0 ? 0 : sumOfSquares / totalCount - mean * mean;
+    out.printf("#[Mean    = %12.3f, StdDeviation   = %12.3f]%n", mean / scalingRatio,
+        Math.sqrt(Math.max(variance, 0)) / scalingRatio);
+    out.printf("#[Max     = %12.3f, Total count    = %12d]%n", max / scalingRatio, totalCount);
+    out.printf("#[Buckets = %12d, SubBuckets     = %12d]%n", counts.length / HALF - 1,
+        SUB_BUCKETS);
+  }
+
+  private long countAtOrBelow(final long value) {
+    final int last = index(value);
+    long count = 0;
+    for (int i = 0; i <= last; i++) {
+      count += counts[i];
+    }
+    return count;
+  }
+
+  private static int index(final long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) Math.max(value, 0);
+    }
+    final int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+    return shift * HALF + (int) (value >>> shift);
+  }
+
+  private static long highestEquivalent(final int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    final int shift = index / HALF - 1;
+    final long subBucket = index - shift * HALF;
+    return ((subBucket + 1) << shift) - 1;
+  }
+}
@@ -0,0 +1,50 @@
+package org.zeromq.perf;
+
+/**
+ * Argument handling shared by the perf tools
+ */
+final class Perf {
+  // Indexed by socket type
+  private static final String[] NAMES =
+      {"pair", "pub", "sub", "req", "rep", "dealer", "router", "pull", "push"};
+
+  private Perf() {}
+
+  /**
+   * The endpoint the throughput tools use to acknowledge the last message: the next port for
+   * tcp://, the same address with "-ack" appended otherwise
+   */
+  static String ackEndpoint(final String endpoint) {
+    if (endpoint.startsWith("tcp://")) {
+      final int colon = endpoint.lastIndexOf(':');
+      return endpoint.substring(0, colon + 1)
+          + (Integer.parseInt(endpoint.substring(colon + 1)) + 1);
+    }
+    return endpoint + "-ack";
+  }
+
+  static void usage(final String program, final String count) {
+    System.out.printf("usage: %s <%s> <message-size> <%s> [socket-type]%n", program,
+        program.startsWith("local") ? "bind-to" : "connect-to", count);
+    System.exit(1);
+  }
+
+  /**
+   * @return the socket type named by the optional fourth argument, or the first allowed type
+   */
+  static int socketType(final String program, final String[] args, final int... allowed) {
+    if (args.length < 4) {
+      return allowed[0];
+    }
+    final StringBuilder names = new StringBuilder();
+    for (int type : allowed) {
+      if (NAMES[type].equalsIgnoreCase(args[3])) {
+        return type;
+      }
+      names.append(names.length() == 0 ? "" : ", ").append(NAMES[type]);
+    }
+    System.out.printf("%s: socket type must be one of %s%n", program, names);
+    System.exit(1);
+    return -1;
+  }
+}
@@ -0,0 +1,54 @@
+package org.zeromq.perf;
+
+import static org.zeromq.zmq.ZMQ.ZMQ_PAIR;
+import static org.zeromq.zmq.ZMQ.ZMQ_REP;
+import static org.zeromq.zmq.ZMQ.ZMQ_ROUTER;
+
+import org.zeromq.zmq.ZFrame;
+import org.zeromq.zmq.ZMessage;
+import org.zeromq.zmq.ZSocket;
+
+/**
+ * Echoes every message back to remote_lat, like libzmq's local_lat
+ */
+public class local_lat {
+  public static void main(String[] args) throws Exception {
+    if (args.length < 3) {
+      Perf.usage("local_lat", "roundtrip-count");
+    }
+    final String bindTo = args[0];
+    final int messageSize = Integer.parseInt(args[1]);
+    final int roundtripCount = Integer.parseInt(args[2]);
+    final int type = Perf.socketType("local_lat", args, ZMQ_REP, ZMQ_ROUTER, ZMQ_PAIR);
+
+    try (final ZSocket socket = new ZSocket(type)) {
+      socket.bind(bindTo);
+      for (int i = 0; i < roundtripCount; i++) {
+        if (type == ZMQ_ROUTER) {
+          final ZMessage message = socket.receiveMessage();
+          check(last(message), messageSize);
+          socket.sendMessage(message);
+        } else {
+          final ZFrame frame = socket.receiveFrame();
+          check(frame, messageSize);
+          socket.sendFrame(frame, 0);
+        }
+      }
+    }
+  }
+
+  private static ZFrame last(final ZMessage message) {
+    ZFrame last = null;
+    for (ZFrame frame : message) {
+      last = frame;
+    }
+    return last;
+  }
+
+  private static void check(final ZFrame frame, final int messageSize) {
+    if (frame.size() != messageSize) {
+      System.out.println("message of incorrect size received");
+      System.exit(1);
+    }
+  }
+}
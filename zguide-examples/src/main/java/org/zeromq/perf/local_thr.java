@@ -0,0 +1,58 @@
+package org.zeromq.perf;
+
+import static org.zeromq.zmq.ZMQ.ZMQ_PAIR;
+import static org.zeromq.zmq.ZMQ.ZMQ_PULL;
+import static org.zeromq.zmq.ZMQ.ZMQ_PUSH;
+import static org.zeromq.zmq.ZMQ.ZMQ_SUB;
+
+import org.zeromq.zmq.ZFrame;
+import org.zeromq.zmq.ZSocket;
+
+/**
+ * Receives the messages of remote_thr and reports the throughput, like libzmq's local_thr. The
+ * clock starts at the first message. Once the last message is in, an empty message on the endpoint
+ * given by {@link Perf#ackEndpoint(String)} tells remote_thr it can close.
+ */
+public class local_thr {
+  public static void main(String[] args) throws Exception {
+    if (args.length < 3) {
+      Perf.usage("local_thr", "message-count");
+    }
+    final String bindTo = args[0];
+    final int messageSize = Integer.parseInt(args[1]);
+    final long messageCount = Long.parseLong(args[2]);
+    final int type = Perf.socketType("local_thr", args, ZMQ_PULL, ZMQ_SUB, ZMQ_PAIR);
+
+    try (final ZSocket socket = new ZSocket(type);
+         final ZSocket ack = new ZSocket(ZMQ_PUSH)) {
+      if (type == ZMQ_SUB) {
+        socket.subscribe(new byte[0]);
+      }
+      ack.bind(Perf.ackEndpoint(bindTo));
+      socket.bind(bindTo);
+
+      check(socket.receiveFrame(), messageSize);
+      final long start = System.nanoTime();
+      for (long i = 1; i < messageCount; i++) {
+        check(socket.receiveFrame(), messageSize);
+      }
+      final long elapsed = Math.max(System.nanoTime() - start, 1);
+      ack.send(new byte[0]);
+
+      final double throughput = messageCount * 1e9 / elapsed;
+      final double bytesPerSecond = throughput * messageSize;
+      System.out.printf("message size: %d [B]%n", messageSize);
+      System.out.printf("message count: %d%n", messageCount);
+      System.out.printf("mean throughput: %d [msg/s]%n", (long) throughput);
+      System.out.printf("mean throughput: %.3f [MB/s]%n", bytesPerSecond / (1024 * 1024));
+      System.out.printf("mean throughput: %.3f [Mb/s]%n", bytesPerSecond * 8 / 1000000);
+    }
+  }
+
+  private static void check(final ZFrame frame, final int messageSize) {
+    if (frame.size() != messageSize) {
+      System.out.println("message of incorrect size received");
+      System.exit(1);
+    }
+  }
+}
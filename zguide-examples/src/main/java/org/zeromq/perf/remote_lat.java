@@ -0,0 +1,64 @@
+package org.zeromq.perf;
+
+import static org.zeromq.zmq.ZMQ.ZMQ_DEALER;
+import static org.zeromq.zmq.ZMQ.ZMQ_PAIR;
+import static org.zeromq.zmq.ZMQ.ZMQ_REQ;
+
+import org.zeromq.zmq.ZFrame;
+import org.zeromq.zmq.ZMessage;
+import org.zeromq.zmq.ZSocket;
+
+/**
+ * Measures round trips to local_lat, like libzmq's remote_lat, and prints the distribution of the
+ * one-way latency (half of each round trip) in microseconds.
+ * <p>
+ * A DEALER sends an empty delimiter ahead of the payload, so it can talk to a REP as well as to a
+ * ROUTER.
+ * </p>
+ */
+public class remote_lat {
+  public static void main(String[] args) throws Exception {
+    if (args.length < 3) {
+      Perf.usage("remote_lat", "roundtrip-count");
+    }
+    final String connectTo = args[0];
+    final int messageSize = Integer.parseInt(args[1]);
+    final int roundtripCount = Integer.parseInt(args[2]);
+    final int type = Perf.socketType("remote_lat", args, ZMQ_REQ, ZMQ_DEALER, ZMQ_PAIR);
+
+    final Histogram histogram = new Histogram();
+    final ZFrame delimiter = new ZFrame();
+    final ZFrame payload = new ZFrame(messageSize);
+    try (final ZSocket socket = new ZSocket(type)) {
+      socket.connect(connectTo);
+      final long start = System.nanoTime();
+      for (int i = 0; i < roundtripCount; i++) {
+        final long sent = System.nanoTime();
+        final ZFrame reply;
+        if (type == ZMQ_DEALER) {
+          final ZMessage request = new ZMessage();
+          request.add(delimiter);
+          request.add(payload);
+          socket.sendMessage(request);
+          final ZMessage message = socket.receiveMessage();
+          message.pop();
+          reply = message.pop();
+        } else {
+          socket.sendFrame(payload, 0);
+          reply = socket.receiveFrame();
+        }
+        histogram.record((System.nanoTime() - sent) / 2);
+        if (reply.size() != messageSize) {
+          System.out.println("message of incorrect size received");
+          System.exit(1);
+        }
+      }
+      final long elapsed = System.nanoTime() - start;
+
+      System.out.printf("message size: %d [B]%n", messageSize);
+      System.out.printf("roundtrip count: %d%n", roundtripCount);
+      System.out.printf("average latency: %.3f [us]%n%n", elapsed / (roundtripCount * 2.0) / 1000);
+      histogram.print(System.out, 1000.0);
+    }
+  }
+}
@@ -0,0 +1,45 @@
+package org.zeromq.perf;
+
+import static org.zeromq.zmq.ZMQ.ZMQ_PAIR;
+import static org.zeromq.zmq.ZMQ.ZMQ_PUB;
+import static org.zeromq.zmq.ZMQ.ZMQ_PULL;
+import static org.zeromq.zmq.ZMQ.ZMQ_PUSH;
+
+import org.zeromq.zmq.ZFrame;
+import org.zeromq.zmq.ZSocket;
+
+/**
+ * Sends messages to local_thr as fast as it will take them, like libzmq's remote_thr. The same
+ * frame is sent every time, so no time goes into allocating payloads.
+ * <p>
+ * A PUB waits a second after connecting so the subscription reaches it before the first message.
+ * Closing a socket discards what it has not sent yet, so the tool waits for local_thr to
+ * acknowledge the last message, on the endpoint given by {@link Perf#ackEndpoint(String)}, before
+ * it closes.
+ * </p>
+ */
+public class remote_thr {
+  public static void main(String[] args) throws Exception {
+    if (args.length < 3) {
+      Perf.usage("remote_thr", "message-count");
+    }
+    final String connectTo = args[0];
+    final int messageSize = Integer.parseInt(args[1]);
+    final long messageCount = Long.parseLong(args[2]);
+    final int type = Perf.socketType("remote_thr", args, ZMQ_PUSH, ZMQ_PUB, ZMQ_PAIR);
+
+    final ZFrame payload = new ZFrame(messageSize);
+    try (final ZSocket socket = new ZSocket(type);
+         final ZSocket ack = new ZSocket(ZMQ_PULL)) {
+      ack.connect(Perf.ackEndpoint(connectTo));
+      socket.connect(connectTo);
+      if (type == ZMQ_PUB) {
+        Thread.sleep(1000);
+      }
+      for (long i = 0; i < messageCount; i++) {
+        socket.sendFrame(payload, 0);
+      }
+      ack.receiveFrame();
+    }
+  }
+}
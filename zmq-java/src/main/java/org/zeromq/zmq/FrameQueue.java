@@ -0,0 +1,104 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v. 2.0. If a copy of
+ * the MPL was not distributed with this file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.zeromq.zmq;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded lock-free multi-producer multi-consumer queue used to hand frames between threads.
+ * <p>
+ * Each slot carries a sequence number so producers and consumers only contend on the head or tail
+ * counter and never take a lock. Elements are either a single {@link ZFrame} or a {@code ZFrame[]}
+ * holding a complete multipart message.
+ * </p>
+ */
+final class FrameQueue { // private-package
+  private final Object[] buffer;
+  private final AtomicLongArray sequences;
+  private final int mask;
+  private final AtomicLong head = new AtomicLong();
+  private final AtomicLong tail = new AtomicLong();
+
+  // Bytes held by the queued frames, maintained by the transport
+  final AtomicLong bytes = new AtomicLong();
+
+  FrameQueue(final int capacity) {
+    int size = 1;
+    while (size < capacity) {
+      size <<= 1;
+    }
+    buffer = new Object[size];
+    sequences = new AtomicLongArray(size);
+    for (int i = 0; i < size; i++) {
+      sequences.set(i, i);
+    }
+    mask = size - 1;
+  }
+
+  /**
+   * Inserts the element if there is room for it
+   *
+   * @return false if the queue is full
+   */
+  boolean offer(final Object element) {
+    long pos = tail.get();
+    for (;;) {
+      final int index = (int) pos & mask;
+      final long diff = sequences.get(index) - pos;
+      if (diff == 0) {
+        if (tail.compareAndSet(pos, pos + 1)) {
+          buffer[index] = element;
+          sequences.lazySet(index, pos + 1);
+          return true;
+        }
+        pos = tail.get();
+      } else if (diff < 0) {
+        return false;
+      } else {
+        pos = tail.get();
+      }
+    }
+  }
+
+  /**
+   * Removes the oldest element
+   *
+   * @return the element or null if the queue is empty
+   */
+  Object poll() {
+    long pos = head.get();
+    for (;;) {
+      final int index = (int) pos & mask;
+      final long diff = sequences.get(index) - (pos + 1);
+      if (diff == 0) {
+        if (head.compareAndSet(pos, pos + 1)) {
+          final Object element = buffer[index];
+          buffer[index] = null;
+          sequences.lazySet(index, pos + mask + 1);
+          return element;
+        }
+        pos = head.get();
+      } else if (diff < 0) {
+        return null;
+      } else {
+        pos = head.get();
+      }
+    }
+  }
+
+  /**
+   * Approximate number of queued elements, exact when producers and consumers are quiescent
+   */
+  int size() {
+    final long size = tail.get() - head.get();
+    return size < 0 ? 0 : (int) size;
+  }
+
+  int capacity() {
+    return buffer.length;
+  }
+}
@@ -0,0 +1,147 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v. 2.0. If a copy of
+ * the MPL was not distributed with this file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.zeromq.zmq;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Consistent-hash ring mapping keys to peer identities.
+ * <p>
+ * Each peer is placed on the ring at a number of virtual nodes so load spreads evenly, and adding
+ * or removing a peer only moves the keys that hash next to its own nodes.
+ * </p>
+ */
+final class HashRing { // private-package
+  private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  private final int virtualNodes;
+  private final NavigableMap<Long, ByteBuffer> ring = new TreeMap<Long, ByteBuffer>();
+  private final Map<ByteBuffer, byte[]> peers = new HashMap<ByteBuffer, byte[]>();
+
+  HashRing(final int virtualNodes) {
+    if (virtualNodes < 1) {
+      throw new IllegalArgumentException("virtualNodes must be positive");
+    }
+    this.virtualNodes = virtualNodes;
+  }
+
+  boolean add(final byte[] identity) {
+    final ByteBuffer peer = ByteBuffer.wrap(identity.clone());
+    if (peers.containsKey(peer)) {
+      return false;
+    }
+    peers.put(peer, peer.array());
+    final long base = hash(peer, 0, identity.length);
+    for (int i = 0; i < virtualNodes; i++) {
+      ring.put(mix(replica(base, i)), peer);
+    }
+    return true;
+  }
+
+  boolean remove(final byte[] identity) {
+    final ByteBuffer peer = ByteBuffer.wrap(identity);
+    if (peers.remove(peer) == null) {
+      return false;
+    }
+    final Iterator<ByteBuffer> nodes = ring.values().iterator();
+    while (nodes.hasNext()) {
+      if (nodes.next().equals(peer)) {
+        nodes.remove();
+      }
+    }
+    return true;
+  }
+
+  boolean contains(final byte[] identity) {
+    return peers.containsKey(ByteBuffer.wrap(identity));
+  }
+
+  int size() {
+    return peers.size();
+  }
+
+  /**
+   * Walks the ring clockwise from the key's position, returning the n-th distinct peer met
+   *
+   * @return the peer's identity, or null if there are fewer than n + 1 peers
+   */
+  byte[] lookup(final ByteBuffer key, final int n) {
+    if (n >= peers.size()) {
+      return null;
+    }
+    final long position = position(key);
+    if (n == 0) {
+      Map.Entry<Long, ByteBuffer> e = ring.ceilingEntry(position);
+      return (e != null ? e : ring.firstEntry()).getValue().array();
+    }
+    final ByteBuffer[] seen = new ByteBuffer[n + 1];
+    int distinct = 0;
+    for (ByteBuffer peer : ring.tailMap(position, true).values()) {
+      distinct = visit(seen, distinct, peer);
+      if (distinct > n) {
+        return seen[n].array();
+      }
+    }
+    for (ByteBuffer peer : ring.headMap(position, false).values()) {
+      distinct = visit(seen, distinct, peer);
+      if (distinct > n) {
+        return seen[n].array();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return the well-spread 64-bit hash of the key's remaining bytes
+   */
+  static long position(final ByteBuffer key) {
+    return mix(hash(key, key.position(), key.remaining()));
+  }
+
+  private static int visit(final ByteBuffer[] seen, final int distinct, final ByteBuffer peer) {
+    for (int i = 0; i < distinct; i++) {
+      if (seen[i] == peer) {
+        return distinct;
+      }
+    }
+    seen[distinct] = peer;
+    return distinct + 1;
+  }
+
+  private static long hash(final ByteBuffer bytes, final int offset, final int length) {
+    long h = FNV_OFFSET;
+    for (int i = offset; i < offset + length; i++) {
+      h ^= bytes.get(i) & 0xff;
+      h *= FNV_PRIME;
+    }
+    return h;
+  }
+
+  // Continues the identity's hash over the bytes of the replica number
+  private static long replica(long h, final int replica) {
+    for (int shift = 0; shift < 32; shift += 8) {
+      h ^= (replica >>> shift) & 0xff;
+      h *= FNV_PRIME;
+    }
+    return h;
+  }
+
+  // Finalizer from MurmurHash3, spreading FNV's weak low bits over the whole ring
+  private static long mix(long h) {
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+}
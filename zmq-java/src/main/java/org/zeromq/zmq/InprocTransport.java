@@ -0,0 +1,369 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v. 2.0. If a copy of
+ * the MPL was not distributed with this file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.zeromq.zmq;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.zeromq.ZMQException;
+
+import zmq.ZError;
+
+/**
+ * Zero-copy transport between threads of the same JVM, addressed as {@code jvm://name}.
+ * <p>
+ * Frames are never copied: the {@link ZFrame} instances passed to a send are the instances handed
+ * out by the peer's receive, and ownership moves with them. A publisher hands the same frame to
+ * every matching subscriber, so subscribers must treat received frames as read-only. PUSH/PULL,
+ * PUB/SUB and PAIR are supported; either side may bind. Queued frames are charged to the
+ * {@link ZMemoryBudget}, once per subscriber queue for published messages.
+ * </p>
+ */
+final class InprocTransport implements Transport { // private-package
+  static final String SCHEME = "jvm://";
+  static final int DEFAULT_CAPACITY = 1024;
+
+  private final Endpoint endpoint;
+  private final boolean bound;
+  private final FrameQueue in;
+  private final FrameQueue out;
+  private final Subscriber subscriber;
+  private final boolean publisher;
+  private final ZMemoryBudget budget;
+
+  private List<ZFrame> pending;
+  private ZFrame[] current;
+  private int cursor;
+
+  private InprocTransport(final Endpoint endpoint, final int type, final boolean bound) {
+    this.endpoint = endpoint;
+    this.bound = bound;
+    this.budget = ManagedContext.getInstance().memoryBudget();
+    switch (type) {
+      case ZMQ.ZMQ_PUSH:
+        in = null;
+        out = endpoint.forward;
+        break;
+      case ZMQ.ZMQ_PULL:
+        in = endpoint.forward;
+        out = null;
+        break;
+      case ZMQ.ZMQ_PAIR:
+        in = bound ? endpoint.backward : endpoint.forward;
+        out = bound ? endpoint.forward : endpoint.backward;
+        break;
+      case ZMQ.ZMQ_SUB:
+        subscriber = new Subscriber(endpoint.forward.capacity());
+        endpoint.subscribers.add(subscriber);
+        in = subscriber.queue;
+        out = null;
+        publisher = false;
+        return;
+      default:
+        in = null;
+        out = null;
+        break;
+    }
+    subscriber = null;
+    publisher = type == ZMQ.ZMQ_PUB;
+  }
+
+  static InprocTransport open(final int type, final String endpoint, final boolean bind) {
+    final int family = family(type);
+    final String name = endpoint.substring(SCHEME.length());
+    final Endpoint e = ManagedContext.getInstance().inprocEndpoint(name, family);
+    if (bind && !e.bound.compareAndSet(false, true)) {
+      ManagedContext.getInstance().releaseInprocEndpoint(e);
+      throw new ZMQException(ZError.EADDRINUSE);
+    }
+    return new InprocTransport(e, type, bind);
+  }
+
+  private static int family(final int type) {
+    switch (type) {
+      case ZMQ.ZMQ_PUSH:
+      case ZMQ.ZMQ_PULL:
+        return ZMQ.ZMQ_PUSH;
+      case ZMQ.ZMQ_PUB:
+      case ZMQ.ZMQ_SUB:
+        return ZMQ.ZMQ_PUB;
+      case ZMQ.ZMQ_PAIR:
+        return ZMQ.ZMQ_PAIR;
+      default:
+        throw new ZMQException(ZError.EPROTONOSUPPORT);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   * <p>
+   * The frames of a multipart message are held back until its last frame. If that frame is
+   * refused under ZMQ_DONTWAIT the earlier frames stay held, so sending the last frame again
+   * completes the message, as with a native socket.
+   * </p>
+   */
+  @Override
+  public boolean send(final ZFrame frame, final int flags) {
+    if (out == null && !publisher) {
+      throw new ZMQException(ZError.ENOTSUP);
+    }
+    if ((flags & ZMQ.ZMQ_SNDMORE) != 0) {
+      if (pending == null) {
+        pending = new ArrayList<ZFrame>();
+      }
+      frame.setMore(true);
+      pending.add(frame);
+      return true;
+    }
+    frame.setMore(false);
+    final Object element;
+    if (pending == null || pending.isEmpty()) {
+      element = frame;
+    } else {
+      final ZFrame[] frames = pending.toArray(new ZFrame[pending.size() + 1]);
+      frames[pending.size()] = frame;
+      element = frames;
+    }
+    final long size = bytes(element);
+    if (publisher) {
+      publish(element, frame, size);
+      clearPending();
+      return true;
+    }
+    final boolean dontWait = (flags & ZMQ.ZMQ_DONTWAIT) != 0;
+    if (!budget.reserve(size, dontWait)) {
+      // Without ZMQ_DONTWAIT this only happens when the budget drops the message
+      if (!dontWait) {
+        clearPending();
+      }
+      return false;
+    }
+    out.bytes.addAndGet(size);
+    int idle = 0;
+    while (!out.offer(element)) {
+      if (dontWait) {
+        out.bytes.addAndGet(-size);
+        budget.release(size);
+        return false;
+      }
+      idle = Utils.idle(idle);
+    }
+    clearPending();
+    return true;
+  }
+
+  private void clearPending() {
+    if (pending != null) {
+      pending.clear();
+    }
+  }
+
+  // Like a native PUB, a subscriber that has reached its high-water mark loses the message. The
+  // budget for every matching subscriber is reserved up front, so a message the budget refuses
+  // reaches none of them.
+  private void publish(final Object element, final ZFrame last, final long size) {
+    final ZFrame first = element == last ? last : ((ZFrame[]) element)[0];
+    int matching = 0;
+    for (Subscriber s : endpoint.subscribers) {
+      if (s.matches(first)) {
+        matching++;
+      }
+    }
+    if (matching == 0 || !budget.reserve(size * matching, true)) {
+      return;
+    }
+    // Subscribers that joined since they were counted have no budget reserved and are skipped
+    int reserved = matching;
+    for (Subscriber s : endpoint.subscribers) {
+      if (reserved == 0) {
+        break;
+      }
+      if (s.matches(first)) {
+        reserved--;
+        s.queue.bytes.addAndGet(size);
+        if (!s.queue.offer(element)) {
+          s.queue.bytes.addAndGet(-size);
+          budget.release(size);
+        }
+      }
+    }
+    budget.release(size * reserved);
+  }
+
+  private static long bytes(final Object element) {
+    if (element instanceof ZFrame) {
+      return ((ZFrame) element).size();
+    }
+    long size = 0;
+    for (ZFrame frame : (ZFrame[]) element) {
+      size += frame.size();
+    }
+    return size;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public ZFrame receive(final int flags) {
+    if (current != null) {
+      final ZFrame frame = current[cursor++];
+      if (cursor == current.length) {
+        current = null;
+      }
+      return frame;
+    }
+    if (in == null) {
+      throw new ZMQException(ZError.ENOTSUP);
+    }
+    Object element;
+    int idle = 0;
+    while ((element = in.poll()) == null) {
+      if ((flags & ZMQ.ZMQ_DONTWAIT) != 0) {
+        return null;
+      }
+      idle = Utils.idle(idle);
+    }
+    final long size = bytes(element);
+    in.bytes.addAndGet(-size);
+    budget.release(size);
+    if (element instanceof ZFrame) {
+      return (ZFrame) element;
+    }
+    current = (ZFrame[]) element;
+    cursor = 1;
+    return current[0];
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void release() {}
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void subscribe(final byte[] topic) {
+    if (subscriber != null) {
+      subscriber.topics.add(topic);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void unsubscribe(final byte[] topic) {
+    if (subscriber != null) {
+      for (byte[] t : subscriber.topics) {
+        if (Arrays.equals(t, topic)) {
+          subscriber.topics.remove(t);
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public long queuedBytes() {
+    long size = 0;
+    if (in != null) {
+      size += in.bytes.get();
+    }
+    if (out != null && out != in) {
+      size += out.bytes.get();
+    }
+    if (publisher) {
+      for (Subscriber s : endpoint.subscribers) {
+        size += s.queue.bytes.get();
+      }
+    }
+    return size;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void close() {
+    if (subscriber != null) {
+      endpoint.subscribers.remove(subscriber);
+      discard(subscriber.queue, budget);
+    }
+    if (bound) {
+      endpoint.bound.set(false);
+    }
+    ManagedContext.getInstance().releaseInprocEndpoint(endpoint);
+  }
+
+  // Frames nobody is left to receive no longer count against the budget
+  static void discard(final FrameQueue queue, final ZMemoryBudget budget) {
+    Object element;
+    while ((element = queue.poll()) != null) {
+      final long size = bytes(element);
+      queue.bytes.addAndGet(-size);
+      budget.release(size);
+    }
+  }
+
+  /**
+   * A named rendezvous point shared by every socket bound or connected to it
+   */
+  static final class Endpoint {
+    final String name;
+    final int family;
+    final AtomicBoolean bound = new AtomicBoolean(false);
+    final AtomicInteger users = new AtomicInteger(0);
+    final FrameQueue forward = new FrameQueue(DEFAULT_CAPACITY);
+    final FrameQueue backward;
+    final List<Subscriber> subscribers = new CopyOnWriteArrayList<Subscriber>();
+
+    Endpoint(final String name, final int family) {
+      this.name = name;
+      this.family = family;
+      this.backward = family == ZMQ.ZMQ_PAIR ? new FrameQueue(DEFAULT_CAPACITY) : null;
+    }
+  }
+
+  private static final class Subscriber {
+    final FrameQueue queue;
+    final List<byte[]> topics = new CopyOnWriteArrayList<byte[]>();
+
+    Subscriber(final int capacity) {
+      queue = new FrameQueue(capacity);
+    }
+
+    boolean matches(final ZFrame frame) {
+      final ByteBuffer bb = frame.byteBuffer;
+      final int start = bb.position();
+      for (byte[] topic : topics) {
+        if (topic.length <= bb.remaining() && startsWith(bb, start, topic)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private static boolean startsWith(final ByteBuffer bb, final int start, final byte[] topic) {
+      for (int i = 0; i < topic.length; i++) {
+        if (bb.get(start + i) != topic[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+}
@@ -7,27 +7,90 @@ package org.zeromq.zmq;
 
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
 import zmq.Ctx;
 import zmq.SocketBase;
+import zmq.ZError;
 import zmq.ZMQ;
 
+import org.zeromq.ZMQException;
+
 // This is to avoid people trying to initialize a Context
 class ManagedContext { // private-package
+  /**
+   * System property overriding the number of I/O threads, read when the context is created
+   */
+  static final String IO_THREADS_PROPERTY = "org.zeromq.zmq.ioThreads";
+
   private final Lock lock;
-  private final Ctx ctx;
+  private volatile Ctx ctx;
+  private volatile int ioThreads;
   private final Set<SocketBase> sockets;
+  private final ConcurrentMap<String, InprocTransport.Endpoint> inprocEndpoints;
+  private final ZMemoryBudget memoryBudget;
 
   private ManagedContext() {
-    this.ctx = ZMQ.init(ZMQ.ZMQ_IO_THREADS_DFLT);
+    this.ioThreads = Math.max(1, Integer.getInteger(IO_THREADS_PROPERTY, ZMQ.ZMQ_IO_THREADS_DFLT));
     this.lock = new ReentrantLock();
     this.sockets = new HashSet<SocketBase>();
+    this.inprocEndpoints = new ConcurrentHashMap<String, InprocTransport.Endpoint>();
+    this.memoryBudget = new ZMemoryBudget();
+  }
+
+  // The Ctx and its I/O threads only exist once the first socket is created, or on start()
+  private Ctx ctx() {
+    Ctx c = ctx;
+    if (c == null) {
+      lock.lock();
+      try {
+        c = ctx;
+        if (c == null) {
+          c = ZMQ.init(ioThreads);
+          ctx = c;
+          // Release ManagedSocket resources when catching SIGINT
+          Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+              close();
+            }
+          });
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+    return c;
+  }
+
+  void start() { // private-package
+    ctx();
+  }
+
+  boolean isStarted() { // private-package
+    return ctx != null;
+  }
+
+  void setIoThreads(int ioThreads) { // private-package
+    if (ioThreads < 1) {
+      throw new IllegalArgumentException("ioThreads must be at least 1, was " + ioThreads);
+    }
+    lock.lock();
+    try {
+      if (ctx != null) {
+        throw new IllegalStateException("the context has already started");
+      }
+      this.ioThreads = ioThreads;
+    } finally {
+      lock.unlock();
+    }
   }
 
   SocketBase createSocket(int type) { // private-package
-    final SocketBase base = ctx.createSocket(type);
+    final SocketBase base = ctx().createSocket(type);
     lock.lock();
     try {
       sockets.add(base);
@@ -38,8 +101,18 @@ class ManagedContext { // private-package
   }
 
   void destroy(SocketBase socketBase) { // private-package
+    destroy(socketBase, false);
+  }
+
+  /**
+   * @param keepLinger true to leave a linger the caller set in place, false to drop anything the
+   *        socket has not sent yet
+   */
+  void destroy(SocketBase socketBase, boolean keepLinger) { // private-package
     try {
-      socketBase.setSocketOpt(ZMQ.ZMQ_LINGER, 0);
+      if (!keepLinger) {
+        socketBase.setSocketOpt(ZMQ.ZMQ_LINGER, 0);
+      }
       socketBase.close();
     } catch (Exception e) {
     }
@@ -51,6 +124,52 @@ class ManagedContext { // private-package
     }
   }
 
+  int ioThreads() { // private-package
+    return ioThreads;
+  }
+
+  ZMemoryBudget memoryBudget() { // private-package
+    return memoryBudget;
+  }
+
+  InprocTransport.Endpoint inprocEndpoint(String name, int family) { // private-package
+    for (;;) {
+      InprocTransport.Endpoint endpoint = inprocEndpoints.get(name);
+      if (endpoint == null) {
+        final InprocTransport.Endpoint created = new InprocTransport.Endpoint(name, family);
+        endpoint = inprocEndpoints.putIfAbsent(name, created);
+        if (endpoint == null) {
+          endpoint = created;
+        }
+      }
+      if (endpoint.family != family) {
+        throw new ZMQException(ZError.ENOCOMPATPROTO);
+      }
+      // A concurrent release may have just dropped the last user; retry with a fresh endpoint
+      final int users = endpoint.users.get();
+      if (users >= 0 && endpoint.users.compareAndSet(users, users + 1)) {
+        return endpoint;
+      }
+    }
+  }
+
+  void releaseInprocEndpoint(InprocTransport.Endpoint endpoint) { // private-package
+    for (;;) {
+      final int users = endpoint.users.get();
+      if (users == 1 && endpoint.users.compareAndSet(1, -1)) {
+        inprocEndpoints.remove(endpoint.name, endpoint);
+        InprocTransport.discard(endpoint.forward, memoryBudget);
+        if (endpoint.backward != null) {
+          InprocTransport.discard(endpoint.backward, memoryBudget);
+        }
+        return;
+      }
+      if (users != 1 && endpoint.users.compareAndSet(users, users - 1)) {
+        return;
+      }
+    }
+  }
+
   // Lazy singleton pattern to avoid double lock checking
   private static class ContextHolder {
     private static final ManagedContext INSTANCE = new ManagedContext();
@@ -78,14 +197,4 @@ class ManagedContext { // private-package
       lock.unlock();
     }
   }
-
-  static {
-    // Release ManagedSocket resources when catching SIGINT
-    Runtime.getRuntime().addShutdownHook(new Thread() {
-      @Override
-      public void run() {
-        getInstance().close();
-      }
-    });
-  }
 }
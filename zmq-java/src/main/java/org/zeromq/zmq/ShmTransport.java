@@ -0,0 +1,484 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v. 2.0. If a copy of
+ * the MPL was not distributed with this file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.zeromq.zmq;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+
+import org.zeromq.ZMQException;
+
+import zmq.ZError;
+
+/**
+ * Transport between processes on the same host, addressed as {@code shm://name}.
+ * <p>
+ * Both peers map the same file, {@code zmq-name} under {@code /dev/shm} (or the temporary directory
+ * when there is none), holding two single-producer single-consumer ring buffers. The writer copies
+ * each frame into the ring once and publishes it with a release store; the reader gets a slice of
+ * the mapping, without a copy, and hands the space back only when the socket's next receive call
+ * starts. Received frames are therefore valid until the next receive call on the socket or its
+ * close, whichever comes first, and must be copied to be kept longer; the frames of a multipart
+ * message read one at a time stay valid until the call after its last frame, so a message has to
+ * fit in the ring. Waiting spins, yields and then parks, without any kernel signalling. PUSH/PULL
+ * and PAIR are supported, with exactly one socket on each side of the endpoint: each side holds a
+ * file lock on its role for as long as it is attached, and a second socket claiming the same role
+ * fails with {@code EADDRINUSE}. When no role is held, which is the case after the last socket
+ * detached or its process died, the rings are reset to empty.
+ * </p>
+ * <p>
+ * The rings are accessed through {@code VarHandle}s, so the transport needs Java 9 or later.
+ * </p>
+ */
+final class ShmTransport implements Transport { // private-package
+  static final String SCHEME = "shm://";
+  static final int RING_CAPACITY = 1 << 20;
+
+  private static final int MAGIC = 0x5a4d5131;
+  private static final int FILE_HEADER = 64;
+  private static final int RING_HEADER = 128;
+  private static final int TAIL_OFFSET = 0;
+  private static final int HEAD_OFFSET = 64;
+  private static final int RECORD_HEADER = 8;
+  private static final int FLAG_MORE = 1;
+  private static final int FLAG_PADDING = 2;
+
+  // Advisory lock regions in the file header: one for setup, one byte per ring and side
+  private static final long SETUP_LOCK = 16;
+  private static final long ROLE_LOCKS = 24;
+  private static final int ROLES = 4;
+
+  private static final MethodHandle GET_ACQUIRE;
+  private static final MethodHandle SET_RELEASE;
+  private static final Object UNSAFE;
+  private static final Method INVOKE_CLEANER;
+
+  static {
+    MethodHandle get = null;
+    MethodHandle set = null;
+    try {
+      final Class<?> varHandle = Class.forName("java.lang.invoke.VarHandle");
+      final Class<?> accessMode = Class.forName("java.lang.invoke.VarHandle$AccessMode");
+      final Object handle = MethodHandles.class
+          .getMethod("byteBufferViewVarHandle", Class.class, ByteOrder.class)
+          .invoke(null, long[].class, ByteOrder.nativeOrder());
+      final Method toMethodHandle = varHandle.getMethod("toMethodHandle", accessMode);
+      for (Object mode : accessMode.getEnumConstants()) {
+        final String name = ((Enum<?>) mode).name();
+        if (name.equals("GET_ACQUIRE")) {
+          get = (MethodHandle) toMethodHandle.invoke(handle, mode);
+        } else if (name.equals("SET_RELEASE")) {
+          set = (MethodHandle) toMethodHandle.invoke(handle, mode);
+        }
+      }
+    } catch (Exception e) {
+      get = null;
+      set = null;
+    }
+    GET_ACQUIRE = get;
+    SET_RELEASE = set;
+
+    // Mappings are otherwise only released when the buffer is collected
+    Object unsafe = null;
+    Method invokeCleaner = null;
+    try {
+      final Class<?> type = Class.forName("sun.misc.Unsafe");
+      final Field field = type.getDeclaredField("theUnsafe");
+      field.setAccessible(true);
+      unsafe = field.get(null);
+      invokeCleaner = type.getMethod("invokeCleaner", ByteBuffer.class);
+    } catch (Exception e) {
+      invokeCleaner = null;
+    }
+    UNSAFE = unsafe;
+    INVOKE_CLEANER = invokeCleaner;
+  }
+
+  private final RandomAccessFile file;
+  private final MappedByteBuffer mapped;
+  private final FileLock[] roles;
+  private final Ring in;
+  private final Ring out;
+
+  private ShmTransport(final RandomAccessFile file, final MappedByteBuffer mapped,
+      final FileLock[] roles, final int in, final int out) {
+    this.file = file;
+    this.mapped = mapped;
+    this.roles = roles;
+    this.in = in < 0 ? null : new Ring(mapped, in);
+    this.out = out < 0 ? null : new Ring(mapped, out);
+  }
+
+  static ShmTransport open(final int type, final String endpoint, final boolean bind) {
+    if (GET_ACQUIRE == null) {
+      throw new ZMQException(ZError.EPROTONOSUPPORT);
+    }
+    final int in;
+    final int out;
+    switch (type) {
+      case ZMQ.ZMQ_PUSH:
+        in = -1;
+        out = 0;
+        break;
+      case ZMQ.ZMQ_PULL:
+        in = 0;
+        out = -1;
+        break;
+      case ZMQ.ZMQ_PAIR:
+        in = bind ? 1 : 0;
+        out = bind ? 0 : 1;
+        break;
+      default:
+        throw new ZMQException(ZError.EPROTONOSUPPORT);
+    }
+    final long length = FILE_HEADER + 2L * (RING_HEADER + RING_CAPACITY);
+    RandomAccessFile file = null;
+    MappedByteBuffer mapped = null;
+    final FileLock[] roles = new FileLock[2];
+    try {
+      file = new RandomAccessFile(file(endpoint.substring(SCHEME.length())), "rw");
+      final FileChannel channel = file.getChannel();
+      // Whichever peer gets here first sizes and stamps the file; the other waits for it
+      final FileLock setup = lock(channel);
+      try {
+        final boolean created = channel.size() == 0;
+        if (created) {
+          file.setLength(length);
+        } else if (channel.size() != length) {
+          throw new ZMQException(ZError.EINVAL);
+        }
+        mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+        if (created) {
+          mapped.putInt(4, RING_CAPACITY);
+          mapped.putInt(0, MAGIC);
+        } else if (mapped.getInt(0) != MAGIC || mapped.getInt(4) != RING_CAPACITY) {
+          throw new ZMQException(ZError.EINVAL);
+        }
+        if (unclaimed(channel)) {
+          reset(mapped);
+        }
+        if (in >= 0) {
+          roles[0] = claim(channel, 2 * in + 1);
+        }
+        if (out >= 0) {
+          roles[1] = claim(channel, 2 * out);
+        }
+      } finally {
+        setup.release();
+      }
+      return new ShmTransport(file, mapped, roles, in, out);
+    } catch (IOException e) {
+      release(file, mapped);
+      throw new ZMQException(e.getMessage(), ZError.EIOEXC);
+    } catch (RuntimeException e) {
+      release(file, mapped);
+      throw e;
+    }
+  }
+
+  static File file(final String name) {
+    if (name.indexOf(File.separatorChar) >= 0) {
+      return new File(name);
+    }
+    final File shm = new File("/dev/shm");
+    final File dir = shm.isDirectory() && shm.canWrite() ? shm
+        : new File(System.getProperty("java.io.tmpdir"));
+    return new File(dir, "zmq-" + name);
+  }
+
+  // Sockets of the same JVM share the process's locks, and see each other's as overlapping
+  private static FileLock lock(final FileChannel channel) throws IOException {
+    int idle = 0;
+    for (;;) {
+      try {
+        return channel.lock(SETUP_LOCK, 1, false);
+      } catch (OverlappingFileLockException e) {
+        idle = Utils.idle(idle);
+      }
+    }
+  }
+
+  private static boolean unclaimed(final FileChannel channel) throws IOException {
+    try {
+      final FileLock probe = channel.tryLock(ROLE_LOCKS, ROLES, false);
+      if (probe == null) {
+        return false;
+      }
+      probe.release();
+      return true;
+    } catch (OverlappingFileLockException e) {
+      return false;
+    }
+  }
+
+  private static FileLock claim(final FileChannel channel, final int role) throws IOException {
+    FileLock lock;
+    try {
+      lock = channel.tryLock(ROLE_LOCKS + role, 1, false);
+    } catch (OverlappingFileLockException e) {
+      lock = null;
+    }
+    if (lock == null) {
+      throw new ZMQException(ZError.EADDRINUSE);
+    }
+    return lock;
+  }
+
+  private static void reset(final ByteBuffer mapped) {
+    for (int ring = 0; ring < 2; ring++) {
+      final int base = FILE_HEADER + ring * (RING_HEADER + RING_CAPACITY);
+      setRelease(mapped, base + TAIL_OFFSET, 0);
+      setRelease(mapped, base + HEAD_OFFSET, 0);
+    }
+  }
+
+  // Closing the file releases the locks still held
+  private static void release(final RandomAccessFile file, final MappedByteBuffer mapped) {
+    if (mapped != null && INVOKE_CLEANER != null) {
+      try {
+        INVOKE_CLEANER.invoke(UNSAFE, mapped);
+      } catch (Exception e) {
+        // Left to the garbage collector
+      }
+    }
+    if (file != null) {
+      try {
+        file.close();
+      } catch (IOException e) {
+      }
+    }
+  }
+
+  private static long getAcquire(final ByteBuffer buffer, final int index) {
+    try {
+      return (long) GET_ACQUIRE.invokeExact(buffer, index);
+    } catch (Throwable e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static void setRelease(final ByteBuffer buffer, final int index, final long value) {
+    try {
+      SET_RELEASE.invokeExact(buffer, index, value);
+    } catch (Throwable e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean send(final ZFrame frame, final int flags) {
+    if (out == null) {
+      throw new ZMQException(ZError.ENOTSUP);
+    }
+    final ByteBuffer src = frame.byteBuffer;
+    final int length = src.remaining();
+    if (align(RECORD_HEADER + length) > RING_CAPACITY) {
+      throw new ZMQException(ZError.EINVAL);
+    }
+    final int recordFlags = (flags & ZMQ.ZMQ_SNDMORE) != 0 ? FLAG_MORE : 0;
+    int idle = 0;
+    while (!out.write(src, length, recordFlags)) {
+      if ((flags & ZMQ.ZMQ_DONTWAIT) != 0) {
+        return false;
+      }
+      idle = Utils.idle(idle);
+    }
+    return true;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public ZFrame receive(final int flags) {
+    if (in == null) {
+      throw new ZMQException(ZError.ENOTSUP);
+    }
+    ZFrame frame;
+    int idle = 0;
+    while ((frame = in.read()) == null) {
+      if ((flags & ZMQ.ZMQ_DONTWAIT) != 0) {
+        return null;
+      }
+      idle = Utils.idle(idle);
+    }
+    return frame;
+  }
+
+  /**
+   * Hands the space of the frames received since the last call back to the writer
+   */
+  @Override
+  public void release() {
+    if (in != null) {
+      in.release();
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void subscribe(final byte[] topic) {}
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void unsubscribe(final byte[] topic) {}
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public long queuedBytes() {
+    return (in == null ? 0 : in.queued()) + (out == null ? 0 : out.queued());
+  }
+
+  /**
+   * Gives up this socket's roles, resets the rings if it was the last socket attached, and unmaps
+   * the file
+   */
+  @Override
+  public void close() {
+    final FileChannel channel = file.getChannel();
+    try {
+      final FileLock setup = lock(channel);
+      try {
+        for (FileLock role : roles) {
+          if (role != null) {
+            role.release();
+          }
+        }
+        if (unclaimed(channel)) {
+          reset(mapped);
+        }
+      } finally {
+        setup.release();
+      }
+    } catch (IOException e) {
+      // The roles are released with the file regardless
+    } finally {
+      release(file, mapped);
+    }
+  }
+
+  private static int align(final int length) {
+    return (length + 7) & ~7;
+  }
+
+  /**
+   * One direction of the endpoint: a header with the tail (written by the producer) and the head
+   * (written by the consumer) on separate cache lines, followed by the record area. The consumer
+   * reads ahead of the head it has published, which only moves on {@link #release()}.
+   */
+  private static final class Ring {
+    private final ByteBuffer mapped;
+    private final ByteBuffer data;
+    private final int tailIndex;
+    private final int headIndex;
+    private final long mask = RING_CAPACITY - 1;
+
+    private long tail;
+    private long cachedHead;
+    private long head;
+    private long released;
+    private long cachedTail;
+
+    Ring(final MappedByteBuffer mapped, final int ring) {
+      final int offset = FILE_HEADER + ring * (RING_HEADER + RING_CAPACITY);
+      this.mapped = mapped;
+      tailIndex = offset + TAIL_OFFSET;
+      headIndex = offset + HEAD_OFFSET;
+      final ByteBuffer dup = mapped.duplicate();
+      dup.position(offset + RING_HEADER);
+      dup.limit(offset + RING_HEADER + RING_CAPACITY);
+      data = dup.slice();
+      tail = getAcquire(mapped, tailIndex);
+      head = getAcquire(mapped, headIndex);
+      released = head;
+      cachedHead = head;
+      cachedTail = tail;
+    }
+
+    boolean write(final ByteBuffer src, final int length, final int flags) {
+      final int record = align(RECORD_HEADER + length);
+      int offset = (int) (tail & mask);
+      final int contiguous = RING_CAPACITY - offset;
+      final int required = contiguous < record ? contiguous + record : record;
+      if (RING_CAPACITY - (tail - cachedHead) < required) {
+        cachedHead = getAcquire(mapped, headIndex);
+        if (RING_CAPACITY - (tail - cachedHead) < required) {
+          return false;
+        }
+      }
+      long next = tail;
+      if (contiguous < record) {
+        data.putInt(offset, contiguous - RECORD_HEADER);
+        data.putInt(offset + 4, FLAG_PADDING);
+        next += contiguous;
+        offset = 0;
+      }
+      final ByteBuffer dst = data.duplicate();
+      dst.position(offset + RECORD_HEADER);
+      dst.put(src.duplicate());
+      data.putInt(offset, length);
+      data.putInt(offset + 4, flags);
+      tail = next + record;
+      setRelease(mapped, tailIndex, tail);
+      return true;
+    }
+
+    // Lends out the record in place; its space stays with the reader until release()
+    ZFrame read() {
+      for (;;) {
+        if (head == cachedTail) {
+          cachedTail = getAcquire(mapped, tailIndex);
+          if (head == cachedTail) {
+            return null;
+          }
+        }
+        final int offset = (int) (head & mask);
+        final int length = data.getInt(offset);
+        final int flags = data.getInt(offset + 4);
+        if ((flags & FLAG_PADDING) != 0) {
+          head += RECORD_HEADER + length;
+          continue;
+        }
+        final ByteBuffer view = data.duplicate();
+        view.position(offset + RECORD_HEADER);
+        view.limit(offset + RECORD_HEADER + length);
+        head += align(RECORD_HEADER + length);
+        return new ZFrame(view.slice(), (flags & FLAG_MORE) != 0);
+      }
+    }
+
+    void release() {
+      if (released != head) {
+        released = head;
+        setRelease(mapped, headIndex, head);
+      }
+    }
+
+    // Bytes of records, headers and padding included, not yet consumed
+    long queued() {
+      return getAcquire(mapped, tailIndex) - getAcquire(mapped, headIndex);
+    }
+  }
+}
@@ -0,0 +1,247 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v. 2.0. If a copy of
+ * the MPL was not distributed with this file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.zeromq.zmq;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+import org.zeromq.ZMQException;
+
+import zmq.ZError;
+
+/**
+ * Append-only queue of frames kept in memory-mapped segment files.
+ * <p>
+ * Frames are appended to the newest segment and read back from the oldest, both sequentially.
+ * Each segment records in its header how far it has been written and read, so a queue reopened on
+ * the same directory resumes where it left off. Positions are only recorded at message boundaries:
+ * after a restart a message half read is read again in full, and one half written is forgotten.
+ * A message is never split across segments: when a frame does not fit, the frames already written
+ * for its message are moved to the new segment with it, and the old segment is sealed at the last
+ * message boundary. Segments are never written once sealed, so frames read in place stay valid
+ * after the segment is consumed and deleted.
+ * </p>
+ */
+final class SpillQueue { // private-package
+  static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+  private static final String PREFIX = "spill-";
+  private static final String SUFFIX = ".seg";
+  private static final int MAGIC = 0x5a53504c;
+  private static final int WRITE_POSITION = 8;
+  private static final int READ_POSITION = 16;
+  private static final int SEALED = 24;
+  private static final int HEADER = 32;
+  private static final int RECORD_HEADER = 8;
+  private static final int FLAG_MORE = 1;
+
+  private final File directory;
+  private final int segmentSize;
+  private final Deque<Segment> segments = new ArrayDeque<Segment>();
+  private long bytes;
+  // Where the message being appended starts in the newest segment
+  private int messageStart;
+
+  private Segment peeked;
+  private int peekedLength;
+  private boolean peekedMore;
+
+  SpillQueue(final File directory, final int segmentSize) {
+    if (segmentSize <= HEADER + RECORD_HEADER) {
+      throw new IllegalArgumentException("segmentSize too small");
+    }
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new ZMQException("Cannot create " + directory, ZError.EIOEXC);
+    }
+    this.directory = directory;
+    this.segmentSize = segmentSize;
+    recover();
+  }
+
+  private void recover() {
+    final String[] names = directory.list(new FilenameFilter() {
+      @Override
+      public boolean accept(File dir, String name) {
+        return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+      }
+    });
+    Arrays.sort(names);
+    for (String name : names) {
+      final long sequence =
+          Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+      final Segment segment = Segment.open(new File(directory, name), sequence, 0);
+      segments.addLast(segment);
+      bytes += segment.writePosition - segment.readPosition;
+      messageStart = segment.writePosition;
+    }
+  }
+
+  boolean isEmpty() {
+    return bytes == 0;
+  }
+
+  /**
+   * @return the bytes spilled and not yet read back, record headers included
+   */
+  long bytes() {
+    return bytes;
+  }
+
+  void append(final ByteBuffer data, final boolean more) {
+    final int length = data.remaining();
+    final int record = RECORD_HEADER + length;
+    Segment tail = segments.peekLast();
+    if (tail == null || tail.sealed || tail.capacity() - tail.writePosition < record) {
+      final Segment previous = tail;
+      final int carried =
+          previous == null || previous.sealed ? 0 : previous.writePosition - messageStart;
+      final long sequence = previous == null ? 0 : previous.sequence + 1;
+      final String name = String.format("%s%020d%s", PREFIX, sequence, SUFFIX);
+      tail = Segment.open(new File(directory, name), sequence,
+          Math.max(segmentSize, HEADER + carried + record));
+      if (carried > 0) {
+        // The reader never sees a message before its last frame, so its frames can still move
+        final ByteBuffer partial = previous.buffer.duplicate();
+        partial.position(messageStart);
+        partial.limit(messageStart + carried);
+        final ByteBuffer dst = tail.buffer.duplicate();
+        dst.position(HEADER);
+        dst.put(partial);
+        tail.writePosition = HEADER + carried;
+        previous.writePosition = messageStart;
+      }
+      if (previous != null && !previous.sealed) {
+        previous.seal();
+      }
+      messageStart = HEADER;
+      segments.addLast(tail);
+    }
+    final MappedByteBuffer buf = tail.buffer;
+    final int position = tail.writePosition;
+    final ByteBuffer dst = buf.duplicate();
+    dst.position(position + RECORD_HEADER);
+    dst.put(data.duplicate());
+    buf.putInt(position, length);
+    buf.putInt(position + 4, more ? FLAG_MORE : 0);
+    tail.writePosition = position + record;
+    if (!more) {
+      buf.putLong(WRITE_POSITION, tail.writePosition);
+      messageStart = tail.writePosition;
+    }
+    bytes += record;
+  }
+
+  /**
+   * Returns the oldest frame without consuming it. The frame reads the segment in place.
+   *
+   * @return the frame, or null if the queue is empty
+   */
+  ZFrame peek() {
+    for (;;) {
+      final Segment head = segments.peekFirst();
+      if (head == null) {
+        return null;
+      }
+      if (head.readPosition < head.writePosition) {
+        final int position = head.readPosition;
+        peeked = head;
+        peekedLength = head.buffer.getInt(position);
+        peekedMore = (head.buffer.getInt(position + 4) & FLAG_MORE) != 0;
+        final ByteBuffer view = head.buffer.duplicate();
+        view.position(position + RECORD_HEADER);
+        view.limit(position + RECORD_HEADER + peekedLength);
+        return new ZFrame(view.slice(), peekedMore);
+      }
+      if (!head.sealed && head == segments.peekLast()) {
+        return null;
+      }
+      segments.pollFirst();
+      head.delete();
+    }
+  }
+
+  /**
+   * Consumes the frame returned by the last {@link #peek()}
+   */
+  void advance() {
+    final Segment head = peeked;
+    peeked = null;
+    final int record = RECORD_HEADER + peekedLength;
+    head.readPosition += record;
+    bytes -= record;
+    if (!peekedMore) {
+      head.buffer.putLong(READ_POSITION, head.readPosition);
+    }
+  }
+
+  void flush() {
+    for (Segment segment : segments) {
+      segment.buffer.force();
+    }
+  }
+
+  private static final class Segment {
+    final File file;
+    final long sequence;
+    final MappedByteBuffer buffer;
+    int writePosition;
+    int readPosition;
+    boolean sealed;
+
+    private Segment(final File file, final long sequence, final MappedByteBuffer buffer) {
+      this.file = file;
+      this.sequence = sequence;
+      this.buffer = buffer;
+    }
+
+    static Segment open(final File file, final long sequence, final int size) {
+      try (final RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+        final boolean created = raf.length() == 0;
+        if (created) {
+          raf.setLength(size);
+        }
+        final MappedByteBuffer buffer =
+            raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+        final Segment segment = new Segment(file, sequence, buffer);
+        if (created) {
+          buffer.putLong(WRITE_POSITION, HEADER);
+          buffer.putLong(READ_POSITION, HEADER);
+          buffer.putInt(0, MAGIC);
+        } else if (buffer.getInt(0) != MAGIC) {
+          throw new ZMQException("Not a spill segment: " + file, ZError.EINVAL);
+        }
+        segment.writePosition = (int) buffer.getLong(WRITE_POSITION);
+        segment.readPosition = (int) buffer.getLong(READ_POSITION);
+        segment.sealed = buffer.getInt(SEALED) != 0;
+        return segment;
+      } catch (IOException e) {
+        throw new ZMQException(e.getMessage(), ZError.EIOEXC);
+      }
+    }
+
+    int capacity() {
+      return buffer.capacity();
+    }
+
+    void seal() {
+      sealed = true;
+      buffer.putLong(WRITE_POSITION, writePosition);
+      buffer.putInt(SEALED, 1);
+    }
+
+    void delete() {
+      file.delete();
+    }
+  }
+}
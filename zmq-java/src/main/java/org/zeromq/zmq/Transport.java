@@ -0,0 +1,48 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v. 2.0. If a copy of
+ * the MPL was not distributed with this file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.zeromq.zmq;
+
+/**
+ * A transport implemented on the Java side of the binding instead of by {@code zmq.SocketBase}.
+ * <p>
+ * Once a {@link ZSocket} binds or connects to an endpoint handled by one of these transports, all
+ * of its sends and receives are routed through it. Flags follow the {@code ZMQ_DONTWAIT} and
+ * {@code ZMQ_SNDMORE} conventions of the native socket.
+ * </p>
+ */
+interface Transport { // private-package
+  /**
+   * Queues a frame for delivery. Ownership of the frame passes to the transport.
+   *
+   * @return false if the frame could not be queued without blocking and ZMQ_DONTWAIT was set
+   */
+  boolean send(ZFrame frame, int flags);
+
+  /**
+   * Receives the next frame, with {@link ZFrame#hasMore()} set for all but the last frame of a
+   * multipart message.
+   *
+   * @return the frame or null if none is available and ZMQ_DONTWAIT was set
+   */
+  ZFrame receive(int flags);
+
+  /**
+   * Called before receive calls on the socket. Frames received earlier must not be used afterwards
+   * if the transport lends out its own memory.
+   */
+  void release();
+
+  void subscribe(byte[] topic);
+
+  void unsubscribe(byte[] topic);
+
+  /**
+   * @return the bytes held in frames queued to or from this socket
+   */
+  long queuedBytes();
+
+  void close();
+}
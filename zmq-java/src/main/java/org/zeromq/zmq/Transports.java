@@ -0,0 +1,23 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v. 2.0. If a copy of
+ * the MPL was not distributed with this file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.zeromq.zmq;
+
+// Resolves endpoints served by Java-side transports rather than by zmq.SocketBase
+final class Transports { // private-package
+  private Transports() {}
+
+  static boolean handles(final String endpoint) {
+    return endpoint.startsWith(InprocTransport.SCHEME)
+        || endpoint.startsWith(ShmTransport.SCHEME);
+  }
+
+  static Transport open(final int type, final String endpoint, final boolean bind) {
+    if (endpoint.startsWith(ShmTransport.SCHEME)) {
+      return ShmTransport.open(type, endpoint, bind);
+    }
+    return InprocTransport.open(type, endpoint, bind);
+  }
+}
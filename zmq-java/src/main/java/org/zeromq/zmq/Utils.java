@@ -5,6 +5,8 @@
 
 package org.zeromq.zmq;
 
+import java.util.concurrent.locks.LockSupport;
+
 class Utils {
   private Utils() {}
 
@@ -12,11 +14,38 @@ class Utils {
 
   static String bytesToHex(byte[] bytes) {
     char[] hexChars = new char[bytes.length * 2];
-    for (int i = 0; i < bytes.length; i++) {
-      int v = bytes[i] & 0xFF;
-      hexChars[i * 2] = HEX_CHARACTERS[v >>> 4];
-      hexChars[i * 2 + 1] = HEX_CHARACTERS[v & 0x0F];
-    }
+    toHex(bytes, 0, bytes.length, hexChars, 0);
     return new String(hexChars);
   }
+
+  /**
+   * Writes bytes as hex digits into a caller-provided array, two per byte, without allocating.
+   *
+   * @return the index in dst after the last digit written
+   */
+  static int toHex(byte[] src, int offset, int length, char[] dst, int dstOffset) {
+    int d = dstOffset;
+    for (int i = offset; i < offset + length; i++) {
+      int v = src[i] & 0xFF;
+      dst[d++] = HEX_CHARACTERS[v >>> 4];
+      dst[d++] = HEX_CHARACTERS[v & 0x0F];
+    }
+    return d;
+  }
+
+  /**
+   * Spin, then yield, then park for progressively longer. Callers pass the number of times they
+   * have already idled and receive the value to pass next time.
+   */
+  static int idle(final int attempts) {
+    if (attempts < 100) {
+      return attempts + 1;
+    }
+    if (attempts < 200) {
+      Thread.yield();
+      return attempts + 1;
+    }
+    LockSupport.parkNanos(attempts < 1000 ? 1000L : 100000L);
+    return attempts < 1000 ? attempts + 1 : attempts;
+  }
 }
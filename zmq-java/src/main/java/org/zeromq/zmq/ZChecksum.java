@@ -0,0 +1,177 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v. 2.0. If a copy of
+ * the MPL was not distributed with this file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.zeromq.zmq;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.util.zip.Checksum;
+
+import org.zeromq.ZMQException;
+
+import zmq.ZError;
+
+/**
+ * Per-frame CRC32C integrity, enabled on a socket with
+ * {@link ZSocket#enableChecksums(ZChecksum.Policy)}.
+ * <p>
+ * Every frame sent carries a 4-byte big-endian CRC32C of its payload as a trailer, which the
+ * receiving socket checks and strips, so both ends must enable checksums. A ROUTER leaves the
+ * identity frame at the start of each message alone. The CRC is computed
+ * directly over the frame's ByteBuffer with {@code java.util.zip.CRC32C} where the runtime has it
+ * (Java 9 and later, where it is an intrinsic using the CPU's CRC32C instructions), and with a
+ * table otherwise.
+ * </p>
+ */
+public final class ZChecksum {
+  /**
+   * What a receiving socket does with a frame whose checksum does not match
+   */
+  public enum Policy {
+    /**
+     * Throw a ZMQException
+     */
+    RAISE,
+    /**
+     * Count the failure and deliver the frame
+     */
+    COUNT
+  }
+
+  static final int TRAILER = 4; // private-package
+
+  private static final MethodHandle CONSTRUCTOR;
+  private static final MethodHandle UPDATE;
+  private static final int[] TABLE = new int[256];
+
+  static {
+    MethodHandle constructor = null;
+    MethodHandle update = null;
+    try {
+      final MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+      constructor = lookup.findConstructor(Class.forName("java.util.zip.CRC32C"),
+          MethodType.methodType(void.class)).asType(MethodType.methodType(Checksum.class));
+      update = lookup.findVirtual(Checksum.class, "update",
+          MethodType.methodType(void.class, ByteBuffer.class));
+    } catch (Exception e) {
+      constructor = null;
+      update = null;
+    }
+    CONSTRUCTOR = constructor;
+    UPDATE = update;
+    // Castagnoli polynomial, reflected
+    for (int i = 0; i < 256; i++) {
+      int crc = i;
+      for (int bit = 0; bit < 8; bit++) {
+        crc = (crc & 1) != 0 ? (crc >>> 1) ^ 0x82f63b78 : crc >>> 1;
+      }
+      TABLE[i] = crc;
+    }
+  }
+
+  private final Checksum crc;
+  private final Policy policy;
+  private long failures;
+
+  ZChecksum(final Policy policy) { // private-package
+    this.policy = policy;
+    this.crc = create();
+  }
+
+  private static Checksum create() {
+    if (CONSTRUCTOR == null) {
+      return null;
+    }
+    try {
+      return (Checksum) CONSTRUCTOR.invokeExact();
+    } catch (Throwable e) {
+      return null;
+    }
+  }
+
+  /**
+   * Computes the CRC32C of the buffer's remaining bytes, leaving its position untouched
+   *
+   * @param buffer the bytes to checksum
+   * @return the CRC32C
+   */
+  public static int crc32c(final ByteBuffer buffer) {
+    return compute(create(), buffer, buffer.remaining());
+  }
+
+  /**
+   * @return true if checksums run on the JDK's intrinsic CRC32C rather than the table
+   */
+  public static boolean isIntrinsic() {
+    return CONSTRUCTOR != null;
+  }
+
+  // Falls back to the table when crc is null
+  static int compute(final Checksum crc, final ByteBuffer buf, final int len) { // private-package
+    final int start = buf.position();
+    if (crc != null) {
+      final ByteBuffer view = buf.duplicate();
+      view.limit(start + len);
+      crc.reset();
+      try {
+        UPDATE.invokeExact(crc, view);
+      } catch (Throwable e) {
+        throw new IllegalStateException(e);
+      }
+      return (int) crc.getValue();
+    }
+    int c = 0xffffffff;
+    for (int i = start; i < start + len; i++) {
+      c = (c >>> 8) ^ TABLE[(c ^ buf.get(i)) & 0xff];
+    }
+    return ~c;
+  }
+
+  long failures() { // private-package
+    return failures;
+  }
+
+  /**
+   * Returns a copy of the frame followed by its checksum
+   */
+  ZFrame seal(final ZFrame frame) { // private-package
+    final ByteBuffer src = frame.byteBuffer;
+    final int length = src.remaining();
+    final ByteBuffer sealed = ByteBuffer.allocate(length + TRAILER);
+    sealed.put(src.duplicate());
+    sealed.putInt(compute(crc, src, length));
+    sealed.flip();
+    return new ZFrame(sealed, frame.hasMore());
+  }
+
+  /**
+   * Checks the trailer of a received buffer
+   *
+   * @return a view of the payload without the trailer
+   */
+  ByteBuffer verify(final ByteBuffer received) { // private-package
+    final int length = received.remaining() - TRAILER;
+    if (length < 0) {
+      mismatch();
+      return received;
+    }
+    final int start = received.position();
+    if (received.getInt(start + length) != compute(crc, received, length)) {
+      mismatch();
+    }
+    final ByteBuffer payload = received.duplicate();
+    payload.limit(start + length);
+    return payload;
+  }
+
+  private void mismatch() {
+    failures++;
+    if (policy == Policy.RAISE) {
+      throw new ZMQException("Frame checksum mismatch", ZError.EIOEXC);
+    }
+  }
+}
@@ -0,0 +1,45 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v. 2.0. If a copy of
+ * the MPL was not distributed with this file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.zeromq.zmq;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Marshals objects to and from single frames, for {@link ZSocket#sendObject(Object)} and
+ * {@link ZSocket#receiveObject(Class)}.
+ * <p>
+ * The socket asks for the exact encoded size, allocates a frame of that size and lets the codec
+ * write into it, so the object is written once, straight into the buffer the engine sends. On
+ * receipt the codec reads from the received frame's buffer. Codecs are shared between sockets and
+ * threads and must be stateless. Bundled codecs and the registry used to find a codec by class are
+ * in {@link ZCodecs}.
+ * </p>
+ *
+ * @param <T> the type of object marshalled
+ */
+public interface ZCodec<T> {
+  /**
+   * @param value the object to encode
+   * @return the exact number of bytes {@link #encode(Object, ByteBuffer)} writes for it
+   */
+  int size(T value);
+
+  /**
+   * Write the object at the buffer's position, advancing it by {@link #size(Object)} bytes
+   *
+   * @param value the object to encode
+   * @param out the buffer, with exactly enough room remaining
+   */
+  void encode(T value, ByteBuffer out);
+
+  /**
+   * Read an object from the buffer's remaining bytes
+   *
+   * @param in the received frame's bytes
+   * @return the object
+   */
+  T decode(ByteBuffer in);
+}
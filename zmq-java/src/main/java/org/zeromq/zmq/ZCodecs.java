@@ -0,0 +1,513 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v. 2.0. If a copy of
+ * the MPL was not distributed with this file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.zeromq.zmq;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The bundled {@link ZCodec}s, and the registry {@link ZSocket#sendObject(Object)} and
+ * {@link ZSocket#receiveObject(Class)} look codecs up in.
+ * <p>
+ * The boxed primitives are encoded big-endian at their natural width, strings as UTF-8 and byte
+ * arrays as they are. All of them are registered for their class. {@link #fields(Class)} builds a
+ * compact binary codec for plain data classes, which has to be registered explicitly:
+ * </p>
+ *
+ * <pre>
+ * ZCodecs.register(Order.class, ZCodecs.fields(Order.class));
+ * socket.sendObject(order);
+ * </pre>
+ */
+public final class ZCodecs {
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+  private static final ConcurrentMap<Class<?>, ZCodec<?>> CODECS =
+      new ConcurrentHashMap<Class<?>, ZCodec<?>>();
+
+  public static final ZCodec<byte[]> BYTES = new ZCodec<byte[]>() {
+    @Override
+    public int size(final byte[] value) {
+      return value.length;
+    }
+
+    @Override
+    public void encode(final byte[] value, final ByteBuffer out) {
+      out.put(value);
+    }
+
+    @Override
+    public byte[] decode(final ByteBuffer in) {
+      final byte[] value = new byte[in.remaining()];
+      in.get(value);
+      return value;
+    }
+  };
+
+  public static final ZCodec<String> STRING = new ZCodec<String>() {
+    @Override
+    public int size(final String value) {
+      return utf8Length(value);
+    }
+
+    @Override
+    public void encode(final String value, final ByteBuffer out) {
+      putUtf8(value, out);
+    }
+
+    @Override
+    public String decode(final ByteBuffer in) {
+      return getUtf8(in, in.remaining());
+    }
+  };
+
+  public static final ZCodec<Long> LONG = new ZCodec<Long>() {
+    @Override
+    public int size(final Long value) {
+      return 8;
+    }
+
+    @Override
+    public void encode(final Long value, final ByteBuffer out) {
+      out.putLong(value);
+    }
+
+    @Override
+    public Long decode(final ByteBuffer in) {
+      return in.getLong();
+    }
+  };
+
+  public static final ZCodec<Integer> INTEGER = new ZCodec<Integer>() {
+    @Override
+    public int size(final Integer value) {
+      return 4;
+    }
+
+    @Override
+    public void encode(final Integer value, final ByteBuffer out) {
+      out.putInt(value);
+    }
+
+    @Override
+    public Integer decode(final ByteBuffer in) {
+      return in.getInt();
+    }
+  };
+
+  public static final ZCodec<Short> SHORT = new ZCodec<Short>() {
+    @Override
+    public int size(final Short value) {
+      return 2;
+    }
+
+    @Override
+    public void encode(final Short value, final ByteBuffer out) {
+      out.putShort(value);
+    }
+
+    @Override
+    public Short decode(final ByteBuffer in) {
+      return in.getShort();
+    }
+  };
+
+  public static final ZCodec<Byte> BYTE = new ZCodec<Byte>() {
+    @Override
+    public int size(final Byte value) {
+      return 1;
+    }
+
+    @Override
+    public void encode(final Byte value, final ByteBuffer out) {
+      out.put(value);
+    }
+
+    @Override
+    public Byte decode(final ByteBuffer in) {
+      return in.get();
+    }
+  };
+
+  public static final ZCodec<Double> DOUBLE = new ZCodec<Double>() {
+    @Override
+    public int size(final Double value) {
+      return 8;
+    }
+
+    @Override
+    public void encode(final Double value, final ByteBuffer out) {
+      out.putDouble(value);
+    }
+
+    @Override
+    public Double decode(final ByteBuffer in) {
+      return in.getDouble();
+    }
+  };
+
+  public static final ZCodec<Float> FLOAT = new ZCodec<Float>() {
+    @Override
+    public int size(final Float value) {
+      return 4;
+    }
+
+    @Override
+    public void encode(final Float value, final ByteBuffer out) {
+      out.putFloat(value);
+    }
+
+    @Override
+    public Float decode(final ByteBuffer in) {
+      return in.getFloat();
+    }
+  };
+
+  public static final ZCodec<Boolean> BOOLEAN = new ZCodec<Boolean>() {
+    @Override
+    public int size(final Boolean value) {
+      return 1;
+    }
+
+    @Override
+    public void encode(final Boolean value, final ByteBuffer out) {
+      out.put(value ? (byte) 1 : (byte) 0);
+    }
+
+    @Override
+    public Boolean decode(final ByteBuffer in) {
+      return in.get() != 0;
+    }
+  };
+
+  static {
+    register(byte[].class, BYTES);
+    register(String.class, STRING);
+    register(Long.class, LONG);
+    register(Integer.class, INTEGER);
+    register(Short.class, SHORT);
+    register(Byte.class, BYTE);
+    register(Double.class, DOUBLE);
+    register(Float.class, FLOAT);
+    register(Boolean.class, BOOLEAN);
+  }
+
+  private ZCodecs() {}
+
+  /**
+   * Register the codec used for objects of exactly this class, replacing any previous one
+   *
+   * @param type the class
+   * @param codec the codec
+   */
+  public static <T> void register(final Class<T> type, final ZCodec<? super T> codec) {
+    CODECS.put(type, codec);
+  }
+
+  /**
+   * @param type the class
+   * @return the codec registered for the class
+   * @throws IllegalArgumentException if none is
+   */
+  @SuppressWarnings("unchecked")
+  public static <T> ZCodec<T> forClass(final Class<T> type) {
+    final ZCodec<T> codec = (ZCodec<T>) CODECS.get(type);
+    if (codec == null) {
+      throw new IllegalArgumentException("No codec registered for " + type.getName());
+    }
+    return codec;
+  }
+
+  /**
+   * Build a codec for a plain data class from its instance fields, which may be primitives,
+   * Strings or byte arrays.
+   * <p>
+   * Fields are written in name order, the declaring class's superclasses first: ints and longs as
+   * zigzag varints, the other primitives at their natural width, and Strings (as UTF-8) and byte
+   * arrays after a varint length, with null allowed. Transient and static fields are skipped. The
+   * class needs a no-argument constructor, which may be private; final fields are supported.
+   * </p>
+   *
+   * @param type the class
+   * @return the codec
+   * @throws IllegalArgumentException if the class has no no-argument constructor or a field of
+   *         another type
+   */
+  public static <T> ZCodec<T> fields(final Class<T> type) {
+    return new FieldCodec<T>(type);
+  }
+
+  static int utf8Length(final String s) { // private-package
+    int length = 0;
+    for (int i = 0; i < s.length(); i++) {
+      final char c = s.charAt(i);
+      if (c < 0x80) {
+        length += 1;
+      } else if (c < 0x800) {
+        length += 2;
+      } else if (Character.isHighSurrogate(c) && i + 1 < s.length()
+          && Character.isLowSurrogate(s.charAt(i + 1))) {
+        length += 4;
+        i++;
+      } else if (Character.isSurrogate(c)) {
+        length += 1;
+      } else {
+        length += 3;
+      }
+    }
+    return length;
+  }
+
+  // Unpaired surrogates become '?', as with String.getBytes
+  static void putUtf8(final String s, final ByteBuffer out) { // private-package
+    for (int i = 0; i < s.length(); i++) {
+      final char c = s.charAt(i);
+      if (c < 0x80) {
+        out.put((byte) c);
+      } else if (c < 0x800) {
+        out.put((byte) (0xc0 | c >> 6));
+        out.put((byte) (0x80 | c & 0x3f));
+      } else if (Character.isHighSurrogate(c) && i + 1 < s.length()
+          && Character.isLowSurrogate(s.charAt(i + 1))) {
+        final int cp = Character.toCodePoint(c, s.charAt(++i));
+        out.put((byte) (0xf0 | cp >> 18));
+        out.put((byte) (0x80 | cp >> 12 & 0x3f));
+        out.put((byte) (0x80 | cp >> 6 & 0x3f));
+        out.put((byte) (0x80 | cp & 0x3f));
+      } else if (Character.isSurrogate(c)) {
+        out.put((byte) '?');
+      } else {
+        out.put((byte) (0xe0 | c >> 12));
+        out.put((byte) (0x80 | c >> 6 & 0x3f));
+        out.put((byte) (0x80 | c & 0x3f));
+      }
+    }
+  }
+
+  static String getUtf8(final ByteBuffer in, final int length) { // private-package
+    final String value;
+    if (in.hasArray()) {
+      value = new String(in.array(), in.arrayOffset() + in.position(), length, UTF8);
+      in.position(in.position() + length);
+    } else {
+      final byte[] b = new byte[length];
+      in.get(b);
+      value = new String(b, UTF8);
+    }
+    return value;
+  }
+
+  static int varintSize(long value) { // private-package
+    int size = 1;
+    while ((value & ~0x7fL) != 0) {
+      value >>>= 7;
+      size++;
+    }
+    return size;
+  }
+
+  static void putVarint(final ByteBuffer out, long value) { // private-package
+    while ((value & ~0x7fL) != 0) {
+      out.put((byte) (value & 0x7f | 0x80));
+      value >>>= 7;
+    }
+    out.put((byte) value);
+  }
+
+  static long getVarint(final ByteBuffer in) { // private-package
+    long value = 0;
+    int shift = 0;
+    byte b;
+    do {
+      b = in.get();
+      value |= (long) (b & 0x7f) << shift;
+      shift += 7;
+    } while (b < 0);
+    return value;
+  }
+
+  private static long zigzag(final long value) {
+    return value << 1 ^ value >> 63;
+  }
+
+  private static long unzigzag(final long value) {
+    return value >>> 1 ^ -(value & 1);
+  }
+
+  private static final class FieldCodec<T> implements ZCodec<T> {
+    private final Constructor<T> constructor;
+    private final Field[] fields;
+    private final Class<?>[] types;
+
+    FieldCodec(final Class<T> type) {
+      try {
+        constructor = type.getDeclaredConstructor();
+      } catch (NoSuchMethodException e) {
+        throw new IllegalArgumentException(type.getName() + " has no no-argument constructor");
+      }
+      constructor.setAccessible(true);
+      final List<Field> found = new ArrayList<Field>();
+      for (Class<?> c = type; c != Object.class; c = c.getSuperclass()) {
+        final List<Field> declared = new ArrayList<Field>();
+        for (Field field : c.getDeclaredFields()) {
+          final int modifiers = field.getModifiers();
+          if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers)) {
+            continue;
+          }
+          final Class<?> t = field.getType();
+          if (!t.isPrimitive() && t != String.class && t != byte[].class) {
+            throw new IllegalArgumentException("Cannot encode field " + field);
+          }
+          field.setAccessible(true);
+          declared.add(field);
+        }
+        Collections.sort(declared, new Comparator<Field>() {
+          @Override
+          public int compare(final Field a, final Field b) {
+            return a.getName().compareTo(b.getName());
+          }
+        });
+        found.addAll(0, declared);
+      }
+      fields = found.toArray(new Field[found.size()]);
+      types = new Class<?>[fields.length];
+      for (int i = 0; i < fields.length; i++) {
+        types[i] = fields[i].getType();
+      }
+    }
+
+    @Override
+    public int size(final T value) {
+      try {
+        int size = 0;
+        for (int i = 0; i < fields.length; i++) {
+          final Class<?> t = types[i];
+          final Field f = fields[i];
+          if (t == int.class) {
+            size += varintSize(zigzag(f.getInt(value)));
+          } else if (t == long.class) {
+            size += varintSize(zigzag(f.getLong(value)));
+          } else if (t == boolean.class || t == byte.class) {
+            size += 1;
+          } else if (t == short.class || t == char.class) {
+            size += 2;
+          } else if (t == float.class) {
+            size += 4;
+          } else if (t == double.class) {
+            size += 8;
+          } else if (t == String.class) {
+            final String s = (String) f.get(value);
+            final int length = s == null ? 0 : utf8Length(s);
+            size += varintSize(s == null ? 0 : length + 1) + length;
+          } else {
+            final byte[] b = (byte[]) f.get(value);
+            final int length = b == null ? 0 : b.length;
+            size += varintSize(b == null ? 0 : length + 1) + length;
+          }
+        }
+        return size;
+      } catch (IllegalAccessException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    @Override
+    public void encode(final T value, final ByteBuffer out) {
+      try {
+        for (int i = 0; i < fields.length; i++) {
+          final Class<?> t = types[i];
+          final Field f = fields[i];
+          if (t == int.class) {
+            putVarint(out, zigzag(f.getInt(value)));
+          } else if (t == long.class) {
+            putVarint(out, zigzag(f.getLong(value)));
+          } else if (t == boolean.class) {
+            out.put(f.getBoolean(value) ? (byte) 1 : (byte) 0);
+          } else if (t == byte.class) {
+            out.put(f.getByte(value));
+          } else if (t == short.class) {
+            out.putShort(f.getShort(value));
+          } else if (t == char.class) {
+            out.putChar(f.getChar(value));
+          } else if (t == float.class) {
+            out.putFloat(f.getFloat(value));
+          } else if (t == double.class) {
+            out.putDouble(f.getDouble(value));
+          } else if (t == String.class) {
+            final String s = (String) f.get(value);
+            if (s == null) {
+              putVarint(out, 0);
+            } else {
+              putVarint(out, utf8Length(s) + 1);
+              putUtf8(s, out);
+            }
+          } else {
+            final byte[] b = (byte[]) f.get(value);
+            if (b == null) {
+              putVarint(out, 0);
+            } else {
+              putVarint(out, b.length + 1);
+              out.put(b);
+            }
+          }
+        }
+      } catch (IllegalAccessException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    @Override
+    public T decode(final ByteBuffer in) {
+      try {
+        final T value = constructor.newInstance();
+        for (int i = 0; i < fields.length; i++) {
+          final Class<?> t = types[i];
+          final Field f = fields[i];
+          if (t == int.class) {
+            f.setInt(value, (int) unzigzag(getVarint(in)));
+          } else if (t == long.class) {
+            f.setLong(value, unzigzag(getVarint(in)));
+          } else if (t == boolean.class) {
+            f.setBoolean(value, in.get() != 0);
+          } else if (t == byte.class) {
+            f.setByte(value, in.get());
+          } else if (t == short.class) {
+            f.setShort(value, in.getShort());
+          } else if (t == char.class) {
+            f.setChar(value, in.getChar());
+          } else if (t == float.class) {
+            f.setFloat(value, in.getFloat());
+          } else if (t == double.class) {
+            f.setDouble(value, in.getDouble());
+          } else {
+            final int length = (int) getVarint(in) - 1;
+            if (length < 0) {
+              f.set(value, null);
+            } else if (t == String.class) {
+              f.set(value, getUtf8(in, length));
+            } else {
+              final byte[] b = new byte[length];
+              in.get(b);
+              f.set(value, b);
+            }
+          }
+        }
+        return value;
+      } catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+  }
+}
@@ -1,7 +1,99 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v. 2.0. If a copy of
+ * the MPL was not distributed with this file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
 package org.zeromq.zmq;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Startup controls for the context shared by every {@link ZSocket}.
+ * <p>
+ * The context, and with it the engine's I/O threads, is created when the first socket is, so a
+ * process that never opens a socket never starts them. Latency sensitive processes can instead
+ * start it explicitly, and warm up the send and receive paths, before serving traffic:
+ * </p>
+ *
+ * <pre>
+ * ZContext.setIoThreads(2);
+ * ZContext.start();
+ * ZContext.warmUp(10000, 64);
+ * socket.connectAndAwait("tcp://primary:5555", 1000);
+ * </pre>
+ */
 public class ZContext {
+  private static final AtomicInteger WARMUPS = new AtomicInteger();
+
   public static void foobar() {
 
   }
+
+  /**
+   * Set the number of I/O threads the context starts with, overriding the
+   * {@code org.zeromq.zmq.ioThreads} system property
+   *
+   * @param ioThreads the number of I/O threads, at least 1
+   * @throws IllegalStateException if the context has already started
+   */
+  public static void setIoThreads(final int ioThreads) {
+    ManagedContext.getInstance().setIoThreads(ioThreads);
+  }
+
+  /**
+   * Start the context and its I/O threads now rather than when the first socket is created
+   */
+  public static void start() {
+    ManagedContext.getInstance().start();
+  }
+
+  /**
+   * @return true if the context and its I/O threads have started
+   */
+  public static boolean isStarted() {
+    return ManagedContext.getInstance().isStarted();
+  }
+
+  /**
+   * Run messages through the send and receive paths so the JIT compiles them before real traffic
+   * arrives. The native path is exercised over {@code inproc://} and the binding's own path over
+   * {@code jvm://}, each with single frames, multipart messages and batched receives. Starts the
+   * context if it has not started yet.
+   *
+   * @param iterations the messages sent over each path
+   * @param messageSize the size of each message in bytes
+   */
+  public static void warmUp(final int iterations, final int messageSize) {
+    final int id = WARMUPS.incrementAndGet();
+    warmUp("inproc://zmq-java-warmup-" + id, iterations, messageSize);
+    warmUp("jvm://zmq-java-warmup-" + id, iterations, messageSize);
+  }
+
+  private static void warmUp(final String endpoint, final int iterations, final int messageSize) {
+    final byte[] payload = new byte[messageSize];
+    final ZFrame[] frames = new ZFrame[64];
+    try (ZSocket pull = new ZSocket(ZMQ.ZMQ_PULL); ZSocket push = new ZSocket(ZMQ.ZMQ_PUSH)) {
+      pull.bind(endpoint);
+      push.connect(endpoint);
+      for (int i = 0; i < iterations; i++) {
+        push.send(payload);
+        pull.receiveFrame();
+        final ZMessage message = new ZMessage();
+        message.add(new ZFrame(messageSize));
+        message.add(new ZFrame(messageSize));
+        push.sendMessage(message);
+        pull.receiveMessage();
+      }
+      // In rounds no larger than a batch, so the sends never block on the high water mark
+      for (int sent = 0; sent < iterations; sent += frames.length) {
+        final int round = Math.min(frames.length, iterations - sent);
+        for (int i = 0; i < round; i++) {
+          push.send(payload);
+        }
+        for (int received = 0; received < round;) {
+          received += pull.receiveBatch(frames, round - received, -1);
+        }
+      }
+    }
+  }
 }
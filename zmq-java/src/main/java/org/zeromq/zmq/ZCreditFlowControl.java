@@ -0,0 +1,113 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v. 2.0. If a copy of
+ * the MPL was not distributed with this file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.zeromq.zmq;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Credit-based flow control, where the receiver decides how much the sender may send.
+ * <p>
+ * The receiver hands out credit, in messages and bytes, over a side channel with
+ * {@link #grant(ZSocket, int, long)}, typically as it finishes processing what it has received.
+ * The sender spends credit as it sends and, once it runs out, reads any new grants from its end of
+ * the channel. The channel socket is read from the sending thread, so it must not be shared with
+ * other threads. Credit may also be granted directly with {@link #grant(int, long)}.
+ * </p>
+ */
+public class ZCreditFlowControl implements ZFlowControl {
+  private static final int GRANT_SIZE = 12;
+
+  private final ZSocket channel;
+  private final AtomicLong messageCredit = new AtomicLong();
+  private final AtomicLong byteCredit = new AtomicLong();
+
+  /**
+   * Create a flow control fed only through {@link #grant(int, long)}
+   */
+  public ZCreditFlowControl() {
+    this(null);
+  }
+
+  /**
+   * Create a flow control fed by grants arriving on the given socket
+   *
+   * @param channel the sender's end of the credit channel
+   */
+  public ZCreditFlowControl(final ZSocket channel) {
+    this.channel = channel;
+  }
+
+  /**
+   * Sends a credit grant over the side channel
+   *
+   * @param channel the receiver's end of the credit channel
+   * @param messages the number of further messages the sender may send
+   * @param bytes the number of further bytes the sender may send
+   * @return true if the grant was queued
+   */
+  public static boolean grant(final ZSocket channel, final int messages, final long bytes) {
+    final ZFrame frame = new ZFrame(GRANT_SIZE).writeInt(0, messages).writeLong(4, bytes);
+    return channel.sendFrame(frame, 0);
+  }
+
+  /**
+   * Adds credit directly
+   *
+   * @param messages the number of further messages the sender may send
+   * @param bytes the number of further bytes the sender may send
+   */
+  public void grant(final int messages, final long bytes) {
+    messageCredit.addAndGet(messages);
+    byteCredit.addAndGet(bytes);
+  }
+
+  public long messageCredit() {
+    return messageCredit.get();
+  }
+
+  public long byteCredit() {
+    return byteCredit.get();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean tryAcquire(final int messages, final int bytes) {
+    if (!hasCredit(messages, bytes)) {
+      if (channel == null || !collectGrants() || !hasCredit(messages, bytes)) {
+        return false;
+      }
+    }
+    messageCredit.addAndGet(-messages);
+    byteCredit.addAndGet(-bytes);
+    return true;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void charge(final int bytes) {
+    byteCredit.addAndGet(-bytes);
+  }
+
+  private boolean hasCredit(final int messages, final int bytes) {
+    return messageCredit.get() >= messages && byteCredit.get() >= bytes;
+  }
+
+  private boolean collectGrants() {
+    boolean granted = false;
+    ZFrame frame;
+    while ((frame = channel.receiveFrame(ZMQ.ZMQ_DONTWAIT)) != null) {
+      if (frame.size() == GRANT_SIZE) {
+        grant(frame.getInt(0), frame.getLong(4));
+        granted = true;
+      }
+    }
+    return granted;
+  }
+}
@@ -0,0 +1,47 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v. 2.0. If a copy of
+ * the MPL was not distributed with this file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.zeromq.zmq;
+
+/**
+ * Send-side admission control for a {@link ZSocket}.
+ * <p>
+ * Before the first frame of each message is handed to the socket, the socket asks its flow control
+ * for permission; the message counts once and the frame counts its bytes. Once a message is
+ * admitted its remaining frames are always sent, so a message is never cut short, and their bytes
+ * are charged to the flow control after the fact. What the socket does while permission is
+ * withheld is chosen by its {@link Policy}; a send with {@code ZMQ_DONTWAIT} always fails fast.
+ * </p>
+ */
+public interface ZFlowControl {
+  /**
+   * What a sender does while permission to send is withheld
+   */
+  enum Policy {
+    /** Back off, parking the thread for progressively longer. */
+    BLOCK,
+    /** Busy-spin until permission is granted. */
+    SPIN,
+    /** Fail the send at once, as if {@code ZMQ_DONTWAIT} had been given. */
+    FAIL_FAST
+  }
+
+  /**
+   * Takes permission to send, without waiting
+   *
+   * @param messages the number of messages started by this frame, 0 or 1
+   * @param bytes the size of the frame
+   * @return false if the frame may not be sent yet
+   */
+  boolean tryAcquire(int messages, int bytes);
+
+  /**
+   * Accounts for a frame of a message that was already admitted, even if that leaves the flow
+   * control in debt, to be paid back before the next message is admitted
+   *
+   * @param bytes the size of the frame
+   */
+  void charge(int bytes);
+}
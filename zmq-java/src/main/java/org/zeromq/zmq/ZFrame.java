@@ -37,6 +37,31 @@ public class ZFrame {
     byteBuffer = ByteBuffer.allocate(size).order(BYTE_ORDER);
   }
 
+  ZFrame(final ByteBuffer byteBuffer, final boolean hasMore) { // private-package
+    this.byteBuffer = byteBuffer;
+    this.hasMore = hasMore;
+  }
+
+  /**
+   * Returns the number of bytes in this frame
+   * 
+   * @return the size of the frame in bytes
+   */
+  public int size() {
+    return byteBuffer.remaining();
+  }
+
+  // The frame's bytes, sharing the backing array when the frame covers all of it
+  byte[] data() { // private-package
+    if (byteBuffer.hasArray() && byteBuffer.arrayOffset() == 0 && byteBuffer.position() == 0
+        && byteBuffer.remaining() == byteBuffer.array().length) {
+      return byteBuffer.array();
+    }
+    final byte[] b = new byte[byteBuffer.remaining()];
+    byteBuffer.duplicate().get(b);
+    return b;
+  }
+
   /**
    * Indicates whether the {@code ZFrame} is part of an unfinished multipart message.
    * <p>
@@ -49,6 +74,15 @@ public class ZFrame {
     return hasMore;
   }
 
+  /**
+   * Explicitly marks the {@code ZFrame} as part of an unfinished multipart message.
+   * 
+   * @param hasMore true if more frames follow this one
+   */
+  public void setMore(final boolean hasMore) {
+    this.hasMore = hasMore;
+  }
+
   /**
    * Wraps the byte array into a {@code ZFrame}.
    * 
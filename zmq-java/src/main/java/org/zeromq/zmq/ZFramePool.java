@@ -0,0 +1,102 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v. 2.0. If a copy of
+ * the MPL was not distributed with this file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.zeromq.zmq;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * A pool of frames of one capacity, so a hot loop can reuse frames instead of allocating them.
+ * <p>
+ * {@link #prime(int)} allocates frames ahead of time, typically at startup, so the first messages
+ * do not pay for the allocation. Frames handed to {@link ZSocket#receiveBatch(ZFrame[], int, long)}
+ * or used as scratch space can be released once their contents have been read. A frame given to a
+ * send must not be released: the engine sends the frame's bytes without copying them, possibly
+ * after the send returns. A pool is not thread safe and should be confined to one thread.
+ * </p>
+ */
+public class ZFramePool {
+  private final int frameSize;
+  private final int capacity;
+  private final Deque<ZFrame> frames;
+
+  /**
+   * Create an empty pool
+   *
+   * @param frameSize the capacity of the pooled frames in bytes
+   * @param capacity the most frames kept; further released frames are dropped
+   */
+  public ZFramePool(final int frameSize, final int capacity) {
+    if (frameSize < 0 || capacity < 1) {
+      throw new IllegalArgumentException("frameSize must be at least 0 and capacity at least 1");
+    }
+    this.frameSize = frameSize;
+    this.capacity = capacity;
+    this.frames = new ArrayDeque<ZFrame>(capacity);
+  }
+
+  /**
+   * Allocate frames up to the pool's capacity
+   *
+   * @param count the frames the pool should hold
+   * @return the frames now pooled
+   */
+  public int prime(final int count) {
+    final int target = Math.min(count, capacity);
+    while (frames.size() < target) {
+      frames.push(new ZFrame(frameSize));
+    }
+    return frames.size();
+  }
+
+  /**
+   * Take a frame from the pool, allocating one if the pool is empty
+   *
+   * @param length the size of the frame, at most the pool's frame size
+   * @return a frame of the given size, with no more flag
+   */
+  public ZFrame acquire(final int length) {
+    if (length > frameSize) {
+      throw new IllegalArgumentException("length " + length + " exceeds frameSize " + frameSize);
+    }
+    ZFrame frame = frames.poll();
+    if (frame == null) {
+      frame = new ZFrame(frameSize);
+    } else if (!reusable(frame.byteBuffer)) {
+      // A receive replaced the frame's buffer with one the pool must not write into
+      frame.wrap(ByteBuffer.allocate(frameSize));
+    }
+    frame.byteBuffer.clear();
+    frame.byteBuffer.limit(length);
+    frame.setMore(false);
+    return frame;
+  }
+
+  /**
+   * Return a frame to the pool
+   *
+   * @param frame the frame, which the caller must not use afterwards
+   */
+  public void release(final ZFrame frame) {
+    if (frames.size() < capacity) {
+      frames.push(frame);
+    }
+  }
+
+  /**
+   * @return the frames currently pooled
+   */
+  public int size() {
+    return frames.size();
+  }
+
+  // Only heap buffers are written into; direct ones may map a spill segment or a shm:// ring
+  private boolean reusable(final ByteBuffer buffer) {
+    return buffer.hasArray() && !buffer.isReadOnly() && buffer.arrayOffset() == 0
+        && buffer.capacity() == frameSize;
+  }
+}
@@ -0,0 +1,171 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v. 2.0. If a copy of
+ * the MPL was not distributed with this file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.zeromq.zmq;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.zeromq.ZMQException;
+
+import zmq.ZError;
+
+/**
+ * Context-wide accounting of the bytes held in queued frames, with an optional cap.
+ * <p>
+ * {@code ZMQ_SNDHWM} and {@code ZMQ_RCVHWM} count messages, so they cannot bound memory when
+ * message sizes vary. The budget counts bytes instead: every frame queued by the binding's own
+ * queues is charged when it is queued and credited back when it is taken off. Once the limit is
+ * reached, further frames are held back, dropped or refused according to the {@link Policy}. A
+ * frame is always admitted when nothing else is queued, so a single message larger than the limit
+ * cannot wedge a socket. Per-socket figures are available from {@link ZSocket#queuedBytes()}.
+ * </p>
+ * <p>
+ * The pipes inside {@code zmq.SocketBase} do not report their sizes, so tcp://, ipc:// and
+ * inproc:// traffic is not counted, and shm:// frames live in a fixed size mapped ring rather than
+ * on the heap; only the {@code jvm://} transport is counted.
+ * </p>
+ */
+public final class ZMemoryBudget {
+  /**
+   * What happens to a frame that would take the context over its limit
+   */
+  public enum Policy {
+    /** The sender backs off until enough queued frames have been taken off. */
+    BLOCK,
+    /** The frame is dropped, and the send reports failure as for {@code ZMQ_DONTWAIT}. */
+    DROP,
+    /** The send throws a {@link ZMQException} with {@code ENOBUFS}. */
+    FAIL
+  }
+
+  private final AtomicLong used = new AtomicLong();
+  private final AtomicLong peak = new AtomicLong();
+  private final AtomicLong dropped = new AtomicLong();
+  private final AtomicLong throttled = new AtomicLong();
+  private volatile long limit;
+  private volatile Policy policy = Policy.BLOCK;
+
+  ZMemoryBudget() {} // private-package
+
+  /**
+   * @return the budget shared by every socket of the context
+   */
+  public static ZMemoryBudget getInstance() {
+    return ManagedContext.getInstance().memoryBudget();
+  }
+
+  /**
+   * Caps the bytes held in frames queued by the {@code jvm://} transport. Sockets on tcp://,
+   * ipc://, inproc:// or shm:// endpoints are neither counted nor held back by the limit; bound
+   * them with {@code ZMQ_SNDHWM} and {@code ZMQ_RCVHWM} instead.
+   *
+   * @param bytes the limit, or 0 for no limit
+   * @param policy what happens to frames beyond the limit
+   */
+  public void setLimit(final long bytes, final Policy policy) {
+    if (bytes < 0) {
+      throw new IllegalArgumentException("limit must not be negative");
+    }
+    if (policy == null) {
+      throw new IllegalArgumentException("policy must not be null");
+    }
+    this.policy = policy;
+    this.limit = bytes;
+  }
+
+  public long limit() {
+    return limit;
+  }
+
+  public Policy policy() {
+    return policy;
+  }
+
+  /**
+   * @return the bytes currently held in queued frames
+   */
+  public long usedBytes() {
+    return used.get();
+  }
+
+  /**
+   * @return the highest value {@link #usedBytes()} has reached
+   */
+  public long peakBytes() {
+    return peak.get();
+  }
+
+  /**
+   * @return the number of frames dropped or refused for lack of budget
+   */
+  public long droppedFrames() {
+    return dropped.get();
+  }
+
+  /**
+   * @return the number of sends that had to wait for budget
+   */
+  public long throttledSends() {
+    return throttled.get();
+  }
+
+  /**
+   * Charges queued bytes against the budget
+   *
+   * @param dontWait true to fail rather than wait when the policy is to block
+   * @return false if the frame must not be queued
+   */
+  boolean reserve(final long bytes, final boolean dontWait) { // private-package
+    int idle = 0;
+    boolean waited = false;
+    for (;;) {
+      final long current = used.get();
+      final long max = limit;
+      if (max == 0 || current == 0 || current + bytes <= max) {
+        if (used.compareAndSet(current, current + bytes)) {
+          updatePeak(current + bytes);
+          return true;
+        }
+        continue;
+      }
+      final Policy p = policy;
+      if (p == Policy.FAIL) {
+        dropped.incrementAndGet();
+        throw new ZMQException(ZError.ENOBUFS);
+      }
+      if (p == Policy.DROP || dontWait) {
+        dropped.incrementAndGet();
+        return false;
+      }
+      if (!waited) {
+        throttled.incrementAndGet();
+        waited = true;
+      }
+      idle = Utils.idle(idle);
+    }
+  }
+
+  void release(final long bytes) { // private-package
+    used.addAndGet(-bytes);
+  }
+
+  private void updatePeak(final long value) {
+    long p;
+    while (value > (p = peak.get())) {
+      if (peak.compareAndSet(p, value)) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "ZMemoryBudget [used=" + used + ", peak=" + peak + ", limit=" + limit + ", policy="
+        + policy + ", dropped=" + dropped + ", throttled=" + throttled + "]";
+  }
+}
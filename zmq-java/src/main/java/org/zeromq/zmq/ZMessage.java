@@ -9,7 +9,6 @@ import java.util.ArrayDeque;
 import java.util.Collection;
 import java.util.Deque;
 import java.util.Iterator;
-import java.util.NoSuchElementException;
 
 /**
  * Working with multipart messages.
@@ -42,20 +41,25 @@ public class ZMessage implements Collection<ZFrame> {
   /**
    * Removes and returns the first Frame in this Message
    * 
-   * @return first frame
+   * @return first frame, or null if the message is empty
    */
   public ZFrame pop() {
-    try {
-      return frames.pop();
-    } catch (NoSuchElementException e) {
-    }
-    return null;
+    return frames.pollFirst();
+  }
+
+  /**
+   * Returns the first Frame in this Message without removing it
+   *
+   * @return first frame, or null if the message is empty
+   */
+  public ZFrame peek() {
+    return frames.peekFirst();
   }
 
   public long contentSize() {
-    int size = 0;
+    long size = 0;
     for (ZFrame f : frames) {
-      // size += f.size();
+      size += f.size();
     }
     return size;
   }
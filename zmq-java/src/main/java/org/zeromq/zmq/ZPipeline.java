@@ -0,0 +1,549 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v. 2.0. If a copy of
+ * the MPL was not distributed with this file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.zeromq.zmq;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A chain of processing stages, a source, any number of transforms and a sink, each running on its
+ * own threads and connected by {@code ZMQ_PUSH}/{@code ZMQ_PULL} sockets over the {@code jvm://}
+ * transport.
+ * <p>
+ * A stage can run on several threads, which then share its input queue, and handles its input in
+ * batches of up to {@code batchSize} messages between checks for shutdown and updates of its
+ * metrics. A stage declared {@link Builder#cheap() cheap} is fused into the stage before it and
+ * runs on that stage's threads, saving a queue hop that would cost more than the stage itself.
+ * When the source is exhausted every stage finishes the messages queued ahead of it and stops, and
+ * {@link #await(long)} returns. Ordering is only kept through stages running on a single thread.
+ * </p>
+ * <p>
+ * If a source, transform or sink throws, the pipeline stops as if closed: every stage drops what
+ * is in flight and its threads end. The first exception thrown is kept as {@link #failure()} and
+ * rethrown, wrapped, by {@link #await(long)}, or by {@link #close()} if it was not awaited.
+ * </p>
+ *
+ * <pre>
+ * try (final ZPipeline pipeline = ZPipeline.builder()
+ *     .source("read", reader)
+ *     .transform("parse", parser).threads(4).batchSize(64)
+ *     .transform("filter", filter).cheap()
+ *     .sink("write", writer)
+ *     .build()) {
+ *   pipeline.start();
+ *   pipeline.await(60000);
+ * }
+ * </pre>
+ */
+public final class ZPipeline implements AutoCloseable {
+  public static final int DEFAULT_BATCH_SIZE = 32;
+
+  private static final AtomicInteger INSTANCES = new AtomicInteger();
+  // Sent by reference over jvm://, so identity tells it apart from any message
+  private static final ZFrame END = new ZFrame();
+
+  /**
+   * Produces the messages entering the pipeline
+   */
+  public interface Source {
+    /**
+     * @return the next message, or null once the source is exhausted
+     */
+    ZMessage next();
+  }
+
+  /**
+   * Turns one message into another
+   */
+  public interface Transform {
+    /**
+     * @return the message to pass on, or null to drop it
+     */
+    ZMessage apply(ZMessage message);
+  }
+
+  /**
+   * Consumes the messages leaving the pipeline
+   */
+  public interface Sink {
+    void accept(ZMessage message);
+  }
+
+  private final List<Segment> segments;
+  private final List<Metrics> metrics;
+  private final List<Thread> threads = new ArrayList<Thread>();
+  private final AtomicBoolean isClosed = new AtomicBoolean(false);
+  private final CountDownLatch finished = new CountDownLatch(1);
+  private volatile boolean failed;
+  private Throwable failure;
+  private String failedStage;
+  private boolean reported;
+  private long startedAt;
+
+  private ZPipeline(final List<Segment> segments, final List<Metrics> metrics) {
+    this.segments = segments;
+    this.metrics = Collections.unmodifiableList(metrics);
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Starts every stage. All sockets are connected before the first thread runs, so no endpoint
+   * can be torn down while messages are still queued on it.
+   */
+  public void start() {
+    if (startedAt != 0) {
+      throw new IllegalStateException("already started");
+    }
+    final String prefix = InprocTransport.SCHEME + "zmq-pipeline-" + INSTANCES.incrementAndGet();
+    for (int s = 0; s < segments.size(); s++) {
+      final Segment segment = segments.get(s);
+      for (int t = 0; t < segment.threads; t++) {
+        final ZSocket in = s == 0 ? null : new ZSocket(ZMQ.ZMQ_PULL);
+        final ZSocket out = s == segments.size() - 1 ? null : new ZSocket(ZMQ.ZMQ_PUSH);
+        if (in != null) {
+          in.connect(prefix + "-" + s);
+        }
+        if (out != null) {
+          out.connect(prefix + "-" + (s + 1));
+        }
+        final Segment next = out == null ? null : segments.get(s + 1);
+        threads.add(new Thread("zmq-pipeline-" + segment.stages[0].name + "-" + t) {
+          @Override
+          public void run() {
+            try {
+              segment.run(in, out, next);
+            } finally {
+              if (in != null) {
+                in.close();
+              }
+              if (out != null) {
+                out.close();
+              }
+            }
+          }
+        });
+      }
+    }
+    startedAt = System.nanoTime();
+    for (Thread t : threads) {
+      t.setDaemon(true);
+      t.start();
+    }
+  }
+
+  /**
+   * Waits for the pipeline to run to completion after its source is exhausted
+   *
+   * @param timeoutMillis how long to wait
+   * @return true if every stage has finished
+   * @throws InterruptedException if interrupted while waiting
+   * @throws IllegalStateException if a stage threw, with the stage's exception as its cause
+   */
+  public boolean await(final long timeoutMillis) throws InterruptedException {
+    final boolean done = finished.await(timeoutMillis, TimeUnit.MILLISECONDS);
+    rethrow();
+    return done;
+  }
+
+  /**
+   * @return the first exception thrown by a source, transform or sink, or null if none threw
+   */
+  public synchronized Throwable failure() {
+    return failure;
+  }
+
+  private synchronized void fail(final String stage, final Throwable cause) {
+    if (failure == null) {
+      failure = cause;
+      failedStage = stage;
+      failed = true;
+    }
+    finished.countDown();
+  }
+
+  private synchronized void rethrow() {
+    if (failure != null) {
+      reported = true;
+      throw new IllegalStateException("Stage " + failedStage + " failed", failure);
+    }
+  }
+
+  private boolean isStopping() {
+    return failed || isClosed.get();
+  }
+
+  /**
+   * @return the metrics of each stage, in pipeline order
+   */
+  public List<Metrics> metrics() {
+    return metrics;
+  }
+
+  /**
+   * Stops every stage, dropping the messages still in flight
+   *
+   * @throws IllegalStateException if a stage threw and {@link #await(long)} did not report it
+   */
+  @Override
+  public void close() {
+    if (isClosed.compareAndSet(false, true)) {
+      for (Thread t : threads) {
+        try {
+          t.join();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      synchronized (this) {
+        if (!reported) {
+          rethrow();
+        }
+      }
+    }
+  }
+
+  /**
+   * Builds a pipeline stage by stage. Settings apply to the stage added last.
+   */
+  public static final class Builder {
+    private final List<Stage> stages = new ArrayList<Stage>();
+
+    private Builder() {}
+
+    public Builder source(final String name, final Source source) {
+      if (!stages.isEmpty()) {
+        throw new IllegalStateException("the source must come first");
+      }
+      stages.add(new Stage(name, source, null, null));
+      return this;
+    }
+
+    public Builder transform(final String name, final Transform transform) {
+      middle();
+      stages.add(new Stage(name, null, transform, null));
+      return this;
+    }
+
+    public Builder sink(final String name, final Sink sink) {
+      middle();
+      stages.add(new Stage(name, null, null, sink));
+      return this;
+    }
+
+    /**
+     * @param threads the number of threads running the stage; its functions must be thread-safe
+     *        when this is more than one
+     */
+    public Builder threads(final int threads) {
+      if (threads < 1) {
+        throw new IllegalArgumentException("threads must be positive");
+      }
+      last().threads = threads;
+      return this;
+    }
+
+    /**
+     * @param batchSize the number of messages handled between shutdown checks and metric updates
+     */
+    public Builder batchSize(final int batchSize) {
+      if (batchSize < 1) {
+        throw new IllegalArgumentException("batchSize must be positive");
+      }
+      last().batchSize = batchSize;
+      return this;
+    }
+
+    /**
+     * Marks the stage as cheap enough to run on the threads of the stage before it
+     */
+    public Builder cheap() {
+      final Stage stage = last();
+      if (stage.source != null) {
+        throw new IllegalStateException("the source cannot be fused");
+      }
+      stage.cheap = true;
+      return this;
+    }
+
+    public ZPipeline build() {
+      if (stages.size() < 2 || last().sink == null) {
+        throw new IllegalStateException("a pipeline needs a source and a sink");
+      }
+      final List<Segment> segments = new ArrayList<Segment>();
+      final List<Metrics> metrics = new ArrayList<Metrics>();
+      List<Stage> fused = new ArrayList<Stage>();
+      for (Stage stage : stages) {
+        if (!fused.isEmpty() && !stage.cheap) {
+          segments.add(new Segment(fused));
+          fused = new ArrayList<Stage>();
+        }
+        fused.add(stage);
+      }
+      segments.add(new Segment(fused));
+      for (Segment segment : segments) {
+        for (int i = 0; i < segment.stages.length; i++) {
+          segment.stages[i].metrics = new Metrics(segment.stages[i].name, segment.threads, i > 0);
+          metrics.add(segment.stages[i].metrics);
+        }
+      }
+      final ZPipeline pipeline = new ZPipeline(segments, metrics);
+      for (Segment segment : segments) {
+        segment.pipeline = pipeline;
+        for (Stage stage : segment.stages) {
+          stage.metrics.pipeline = pipeline;
+          stage.metrics.segment = segment;
+        }
+      }
+      return pipeline;
+    }
+
+    private void middle() {
+      if (stages.isEmpty()) {
+        throw new IllegalStateException("the source must come first");
+      }
+      if (last().sink != null) {
+        throw new IllegalStateException("the sink must come last");
+      }
+    }
+
+    private Stage last() {
+      if (stages.isEmpty()) {
+        throw new IllegalStateException("no stage added yet");
+      }
+      return stages.get(stages.size() - 1);
+    }
+  }
+
+  /**
+   * Throughput and backlog of one stage
+   */
+  public static final class Metrics {
+    private final String name;
+    private final int threads;
+    private final boolean fused;
+    private final AtomicLong processed = new AtomicLong();
+    private ZPipeline pipeline;
+    private Segment segment;
+
+    private Metrics(final String name, final int threads, final boolean fused) {
+      this.name = name;
+      this.threads = threads;
+      this.fused = fused;
+    }
+
+    public String name() {
+      return name;
+    }
+
+    public int threads() {
+      return threads;
+    }
+
+    /**
+     * @return true if the stage runs on the threads of the stage before it
+     */
+    public boolean isFused() {
+      return fused;
+    }
+
+    /**
+     * @return the messages the stage has handled, updated once per batch
+     */
+    public long processed() {
+      return processed.get();
+    }
+
+    /**
+     * @return the messages handled per second since the pipeline started
+     */
+    public double throughput() {
+      final long elapsed = System.nanoTime() - pipeline.startedAt;
+      return pipeline.startedAt == 0 || elapsed <= 0 ? 0 : processed.get() * 1e9 / elapsed;
+    }
+
+    /**
+     * @return the messages queued for the stage and not yet taken, 0 for the source and fused
+     *         stages
+     */
+    public long queueDepth() {
+      return fused ? 0 : Math.max(segment.enqueued.get() - segment.dequeued.get(), 0);
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%s: %d processed, %.0f msg/s, %d queued, %d thread(s)%s", name,
+          processed(), throughput(), queueDepth(), threads, fused ? ", fused" : "");
+    }
+  }
+
+  private static final class Stage {
+    final String name;
+    final Source source;
+    final Transform transform;
+    final Sink sink;
+    int threads = 1;
+    int batchSize = DEFAULT_BATCH_SIZE;
+    boolean cheap;
+    Metrics metrics;
+
+    Stage(final String name, final Source source, final Transform transform, final Sink sink) {
+      this.name = name;
+      this.source = source;
+      this.transform = transform;
+      this.sink = sink;
+    }
+  }
+
+  /**
+   * Stages fused onto the same threads, fed by one queue
+   */
+  private static final class Segment {
+    final Stage[] stages;
+    final String name;
+    final int threads;
+    final int batchSize;
+    final AtomicInteger running;
+    final AtomicLong enqueued = new AtomicLong();
+    final AtomicLong dequeued = new AtomicLong();
+    ZPipeline pipeline;
+
+    Segment(final List<Stage> stages) {
+      this.stages = stages.toArray(new Stage[stages.size()]);
+      final StringBuilder names = new StringBuilder(this.stages[0].name);
+      for (int i = 1; i < this.stages.length; i++) {
+        names.append('+').append(this.stages[i].name);
+      }
+      this.name = names.toString();
+      this.threads = this.stages[0].threads;
+      this.batchSize = this.stages[0].batchSize;
+      this.running = new AtomicInteger(threads);
+    }
+
+    void run(final ZSocket in, final ZSocket out, final Segment next) {
+      boolean ended = false;
+      try {
+        ended = loop(in, out, next);
+      } catch (Throwable e) {
+        pipeline.fail(name, e);
+      } finally {
+        // The last thread out tells every thread of the next stage, behind all of its messages
+        if (running.decrementAndGet() == 0 && ended) {
+          if (out == null) {
+            pipeline.finished.countDown();
+          } else {
+            for (int i = 0; i < next.threads; i++) {
+              send(END, out);
+            }
+          }
+        }
+      }
+    }
+
+    // Returns true once the input is exhausted, false if the pipeline is stopping
+    private boolean loop(final ZSocket in, final ZSocket out, final Segment next) {
+      final long[] counts = new long[stages.length];
+      int idle = 0;
+      boolean ended = false;
+      while (!ended && !pipeline.isStopping()) {
+        int taken = 0;
+        long sent = 0;
+        while (taken < batchSize) {
+          final ZMessage message = in == null ? stages[0].source.next()
+              : in.receiveMessage(ZMQ.ZMQ_DONTWAIT);
+          if (message == null) {
+            ended = in == null;
+            break;
+          }
+          if (message.peek() == END) {
+            ended = true;
+            break;
+          }
+          taken++;
+          if (process(message, counts, out)) {
+            sent++;
+          }
+        }
+        flush(counts, in == null ? 0 : taken, sent, next);
+        if (taken == 0 && !ended) {
+          idle = Utils.idle(idle);
+        } else {
+          idle = 0;
+        }
+      }
+      return ended;
+    }
+
+    private boolean process(ZMessage message, final long[] counts, final ZSocket out) {
+      for (int i = 0; i < stages.length; i++) {
+        final Stage stage = stages[i];
+        counts[i]++;
+        if (stage.transform != null) {
+          message = stage.transform.apply(message);
+          if (message == null) {
+            return false;
+          }
+        } else if (stage.sink != null) {
+          stage.sink.accept(message);
+          return false;
+        }
+      }
+      return send(message, out);
+    }
+
+    // A blocking send would never return once the next stage has stopped. The frames before a
+    // refused last frame stay queued, so only the last frame is sent again.
+    private boolean send(final ZMessage message, final ZSocket out) {
+      if (message.isEmpty()) {
+        return false;
+      }
+      int left = message.size();
+      ZFrame last = null;
+      for (ZFrame frame : message) {
+        if (--left > 0) {
+          out.sendFrame(frame, ZMQ.ZMQ_SNDMORE);
+        } else {
+          last = frame;
+        }
+      }
+      return send(last, out);
+    }
+
+    private boolean send(final ZFrame frame, final ZSocket out) {
+      int idle = 0;
+      while (!out.sendFrame(frame, ZMQ.ZMQ_DONTWAIT)) {
+        if (pipeline.isStopping()) {
+          return false;
+        }
+        idle = Utils.idle(idle);
+      }
+      return true;
+    }
+
+    private void flush(final long[] counts, final int taken, final long sent, final Segment next) {
+      for (int i = 0; i < stages.length; i++) {
+        if (counts[i] != 0) {
+          stages[i].metrics.processed.addAndGet(counts[i]);
+          counts[i] = 0;
+        }
+      }
+      if (taken != 0) {
+        dequeued.addAndGet(taken);
+      }
+      if (sent != 0) {
+        next.enqueued.addAndGet(sent);
+      }
+    }
+  }
+}
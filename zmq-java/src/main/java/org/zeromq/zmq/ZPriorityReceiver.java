@@ -0,0 +1,162 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v. 2.0. If a copy of
+ * the MPL was not distributed with this file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.zeromq.zmq;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import zmq.PollItem;
+
+/**
+ * Receives from several sockets, or lanes, in priority order, so that control and latency sensitive
+ * traffic is not queued behind bulk data on a shared socket.
+ * <p>
+ * With {@link Policy#STRICT} the first lane added that has a message queued is always served first;
+ * a busy high priority lane starves the others. With {@link Policy#WEIGHTED} the lanes take turns,
+ * each receiving up to its weight in messages per turn before the next lane's turn, and a lane with
+ * nothing queued gives up the rest of its turn (deficit round robin counted in messages). Either
+ * way a lane is checked by a non-blocking receive, and the receiver only polls when every lane is
+ * empty. Scheduling allocates nothing: messages are received into a caller-provided
+ * {@link ZMessage} and the poll items are created as lanes are added. The sockets remain owned by
+ * the caller. Like {@link ZSocket}, an instance must only be used from one thread at a time.
+ * </p>
+ */
+public class ZPriorityReceiver {
+  /**
+   * How lanes with messages queued share the receiver
+   */
+  public enum Policy {
+    /** Lanes are served in the order they were added; weights are ignored. */
+    STRICT,
+    /** Lanes take turns, receiving up to their weight in messages per turn. */
+    WEIGHTED
+  }
+
+  private final Policy policy;
+  private ZSocket[] lanes = new ZSocket[0];
+  private int[] weights = new int[0];
+  private long[] received = new long[0];
+  private PollItem[] items = new PollItem[0];
+  private boolean pollable = true;
+  private int current;
+  private int deficit;
+
+  public ZPriorityReceiver(final Policy policy) {
+    this.policy = policy;
+  }
+
+  /**
+   * Add a lane, after the lanes already added. The socket should already be bound or connected,
+   * so that the receiver knows whether it can be polled.
+   *
+   * @param socket the socket to receive from
+   * @param weight the messages received per turn under {@link Policy#WEIGHTED}, at least 1
+   * @return the lane's index, as returned by {@link #receive(ZMessage, long)}
+   */
+  public int addLane(final ZSocket socket, final int weight) {
+    if (weight < 1) {
+      throw new IllegalArgumentException("weight must be at least 1, was " + weight);
+    }
+    final int lane = lanes.length;
+    lanes = Arrays.copyOf(lanes, lane + 1);
+    weights = Arrays.copyOf(weights, lane + 1);
+    received = Arrays.copyOf(received, lane + 1);
+    lanes[lane] = socket;
+    weights[lane] = weight;
+    if (socket.isNative()) {
+      items = Arrays.copyOf(items, items.length + 1);
+      items[items.length - 1] = new PollItem(socket.base(), ZMQ.ZMQ_POLLIN);
+    } else {
+      pollable = false;
+    }
+    return lane;
+  }
+
+  /**
+   * Receive the next message in priority order
+   *
+   * @param into cleared, then filled with the message's frames
+   * @param timeoutMillis how long to wait when every lane is empty, 0 not to wait, -1 to wait
+   *        forever
+   * @return the index of the lane the message came from, or -1 if the time ran out
+   */
+  public int receive(final ZMessage into, final long timeoutMillis) {
+    if (lanes.length == 0) {
+      throw new IllegalStateException("no lanes were added");
+    }
+    into.clear();
+    final long deadline = timeoutMillis < 0 ? Long.MAX_VALUE
+        : System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    int idle = 0;
+    for (;;) {
+      final int lane = policy == Policy.STRICT ? nextStrict(into) : nextWeighted(into);
+      if (lane >= 0) {
+        received[lane]++;
+        return lane;
+      }
+      final long remaining = deadline - System.nanoTime();
+      if (remaining <= 0) {
+        return -1;
+      }
+      if (pollable) {
+        zmq.ZMQ.poll(items, timeoutMillis < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(remaining) + 1);
+      } else {
+        // jvm:// and shm:// lanes cannot be polled
+        idle = Utils.idle(idle);
+      }
+    }
+  }
+
+  /**
+   * @param lane the lane's index
+   * @return the messages received from the lane
+   */
+  public long received(final int lane) {
+    return received[lane];
+  }
+
+  private int nextStrict(final ZMessage into) {
+    for (int lane = 0; lane < lanes.length; lane++) {
+      if (take(lane, into)) {
+        return lane;
+      }
+    }
+    return -1;
+  }
+
+  private int nextWeighted(final ZMessage into) {
+    for (int n = 0; n <= lanes.length; n++) {
+      if (deficit == 0) {
+        deficit = weights[current];
+      }
+      final int lane = current;
+      if (take(lane, into)) {
+        if (--deficit == 0) {
+          current = (current + 1) % lanes.length;
+        }
+        return lane;
+      }
+      // An empty lane gives up the rest of its turn
+      deficit = 0;
+      current = (current + 1) % lanes.length;
+    }
+    return -1;
+  }
+
+  private boolean take(final int lane, final ZMessage into) {
+    final ZSocket socket = lanes[lane];
+    ZFrame frame = socket.receiveFrame(ZMQ.ZMQ_DONTWAIT);
+    if (frame == null) {
+      return false;
+    }
+    into.add(frame);
+    while (frame.hasMore()) {
+      frame = socket.receiveFrame(0);
+      into.add(frame);
+    }
+    return true;
+  }
+}
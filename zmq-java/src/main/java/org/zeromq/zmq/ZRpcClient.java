@@ -0,0 +1,331 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v. 2.0. If a copy of
+ * the MPL was not distributed with this file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.zeromq.zmq;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.zeromq.ZMQException;
+
+import zmq.PollItem;
+import zmq.ZError;
+
+/**
+ * Pipelined request/response client over a {@code ZMQ_DEALER} socket.
+ * <p>
+ * Unlike {@code ZMQ_REQ}, any number of requests may be in flight on the connection. Each request
+ * is sent as a correlation id frame followed by the request frames, and the reply is matched to its
+ * {@link Future} by the id echoed back by a {@link ZRpcServer}, so replies may arrive in any order.
+ * A request whose handler threw fails with a {@link ZMQException} carrying the server's description
+ * of the exception. The socket is owned by a background thread; {@link #call(ZMessage, long)} may
+ * be used from any thread.
+ * </p>
+ */
+public class ZRpcClient implements AutoCloseable {
+  private static final AtomicInteger INSTANCES = new AtomicInteger();
+  private static final byte[] WAKE = new byte[0];
+
+  private final ZSocket dealer;
+  private final ZSocket wakeIn;
+  private final ZSocket wakeOut;
+  private final Queue<Call> outbound = new ConcurrentLinkedQueue<Call>();
+  private final AtomicBoolean wakePending = new AtomicBoolean(false);
+  private final AtomicLong correlationIds = new AtomicLong();
+  private final AtomicBoolean isClosed = new AtomicBoolean(false);
+  // Orders queuing a call against close(), after which the I/O thread no longer drains the queue
+  private final Object registration = new Object();
+  private final Thread thread;
+  // Written by the I/O thread; cancelled calls remove themselves from any thread
+  private final Map<Long, Call> inFlight = new ConcurrentHashMap<Long, Call>();
+
+  // Owned by the I/O thread
+  private final PriorityQueue<Call> deadlines = new PriorityQueue<Call>(64, new Comparator<Call>() {
+    @Override
+    public int compare(Call a, Call b) {
+      return Long.compare(a.deadline, b.deadline);
+    }
+  });
+
+  /**
+   * Create a client connected to the given endpoint
+   *
+   * @param endpoint the endpoint of a {@link ZRpcServer}
+   */
+  public ZRpcClient(final String endpoint) {
+    final String wakeEndpoint = "inproc://zmq-rpc-client-" + INSTANCES.incrementAndGet();
+    dealer = new ZSocket(ZMQ.ZMQ_DEALER);
+    wakeIn = new ZSocket(ZMQ.ZMQ_PULL);
+    wakeOut = new ZSocket(ZMQ.ZMQ_PUSH);
+    wakeIn.bind(wakeEndpoint);
+    wakeOut.connect(wakeEndpoint);
+    dealer.connect(endpoint);
+    thread = new Thread("zmq-rpc-client") {
+      @Override
+      public void run() {
+        loop();
+      }
+    };
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Sends a request without waiting for earlier requests to be answered
+   *
+   * @param request the request frames, owned by the client once passed in
+   * @param timeoutMillis how long to wait for the reply, or a negative value to wait forever
+   * @return a future completed with the reply frames, or failing with a {@link TimeoutException}
+   */
+  public Future<ZMessage> call(final ZMessage request, final long timeoutMillis) {
+    if (isClosed.get()) {
+      throw new ZMQException(ZError.ETERM);
+    }
+    final long deadline = timeoutMillis < 0 ? Long.MAX_VALUE
+        : System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    final Call call = new Call(correlationIds.incrementAndGet(), request, deadline);
+    synchronized (registration) {
+      outbound.offer(call);
+      if (isClosed.get()) {
+        outbound.remove(call);
+        call.complete(null, new ZMQException(ZError.ETERM));
+        return call;
+      }
+    }
+    wake();
+    return call;
+  }
+
+  // Wake-ups are coalesced so a burst of calls costs one message on the inproc pipe
+  private void wake() {
+    if (wakePending.compareAndSet(false, true)) {
+      synchronized (wakeOut) {
+        wakeOut.send(WAKE, ZMQ.ZMQ_DONTWAIT);
+      }
+    }
+  }
+
+  private void loop() {
+    final PollItem[] items =
+        {new PollItem(dealer.base(), ZMQ.ZMQ_POLLIN), new PollItem(wakeIn.base(), ZMQ.ZMQ_POLLIN)};
+    try {
+      while (!isClosed.get()) {
+        zmq.ZMQ.poll(items, pollTimeout());
+        if (items[1].isReadable()) {
+          while (wakeIn.receiveFrame(ZMQ.ZMQ_DONTWAIT) != null) {
+            continue;
+          }
+          wakePending.set(false);
+          sendOutbound();
+        }
+        if (items[0].isReadable()) {
+          receiveReplies();
+        }
+        expire(System.nanoTime());
+      }
+    } catch (RuntimeException e) {
+      if (!isClosed.get()) {
+        failAll(e);
+        throw e;
+      }
+    }
+    failAll(new ZMQException(ZError.ETERM));
+  }
+
+  private long pollTimeout() {
+    while (!deadlines.isEmpty() && deadlines.peek().isDone()) {
+      deadlines.poll();
+    }
+    if (deadlines.isEmpty()) {
+      return -1;
+    }
+    final long remaining = deadlines.peek().deadline - System.nanoTime();
+    return remaining <= 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(remaining) + 1;
+  }
+
+  private void sendOutbound() {
+    Call call;
+    while ((call = outbound.poll()) != null) {
+      if (call.isDone()) {
+        continue;
+      }
+      inFlight.put(call.id, call);
+      if (call.isDone()) {
+        // Cancelled before it was registered, so the cancel may have missed the entry
+        inFlight.remove(call.id);
+        continue;
+      }
+      if (call.deadline != Long.MAX_VALUE) {
+        deadlines.add(call);
+      }
+      final ZMessage request = call.request;
+      call.request = null;
+      dealer.sendFrame(new ZFrame(8).writeLong(0, call.id),
+          request.isEmpty() ? 0 : ZMQ.ZMQ_SNDMORE);
+      if (!request.isEmpty()) {
+        dealer.sendMessage(request);
+      }
+    }
+  }
+
+  private void receiveReplies() {
+    ZMessage reply;
+    while ((reply = dealer.receiveMessage(ZMQ.ZMQ_DONTWAIT)) != null) {
+      final ZFrame id = reply.pop();
+      if (id.size() == 8) {
+        final Call call = inFlight.remove(id.getLong(0));
+        if (call != null) {
+          call.complete(reply, null);
+        }
+      } else if (id.size() == 9 && id.getByte(8) == ZRpcServer.ERROR) {
+        final Call call = inFlight.remove(id.getLong(0));
+        if (call != null) {
+          final ZFrame description = reply.pop();
+          call.complete(null, new ZMQException(description == null ? "Handler failed"
+              : description.getStringUtf8(0, description.size()), ZError.EFAULT));
+        }
+      }
+    }
+  }
+
+  // Entries for calls that already completed are discarded lazily as they reach the head
+  private void expire(final long now) {
+    while (!deadlines.isEmpty() && deadlines.peek().deadline <= now) {
+      final Call call = deadlines.poll();
+      if (inFlight.remove(call.id) != null) {
+        call.complete(null, new TimeoutException("No reply within deadline"));
+      }
+    }
+  }
+
+  private void failAll(final Throwable cause) {
+    for (Call call : inFlight.values()) {
+      call.complete(null, cause);
+    }
+    inFlight.clear();
+    deadlines.clear();
+    Call call;
+    while ((call = outbound.poll()) != null) {
+      call.complete(null, cause);
+    }
+  }
+
+  /**
+   * Number of requests sent and not yet answered, timed out or cancelled
+   *
+   * @return an approximation of the number of in-flight requests
+   */
+  public int inFlight() {
+    return inFlight.size();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void close() {
+    final boolean closing;
+    synchronized (registration) {
+      closing = isClosed.compareAndSet(false, true);
+    }
+    if (closing) {
+      synchronized (wakeOut) {
+        wakeOut.send(WAKE, ZMQ.ZMQ_DONTWAIT);
+      }
+      try {
+        thread.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      dealer.close();
+      wakeOut.close();
+      wakeIn.close();
+    }
+  }
+
+  private final class Call implements Future<ZMessage> {
+    final long id;
+    final long deadline;
+    final CountDownLatch done = new CountDownLatch(1);
+    final AtomicBoolean completed = new AtomicBoolean(false);
+    ZMessage request;
+    volatile ZMessage reply;
+    volatile Throwable failure;
+
+    Call(final long id, final ZMessage request, final long deadline) {
+      this.id = id;
+      this.request = request;
+      this.deadline = deadline;
+    }
+
+    boolean complete(final ZMessage reply, final Throwable failure) {
+      if (completed.compareAndSet(false, true)) {
+        this.reply = reply;
+        this.failure = failure;
+        done.countDown();
+        return true;
+      }
+      return false;
+    }
+
+    @Override
+    public boolean cancel(final boolean mayInterruptIfRunning) {
+      if (complete(null, new CancellationException())) {
+        inFlight.remove(id);
+        return true;
+      }
+      return false;
+    }
+
+    @Override
+    public boolean isCancelled() {
+      return failure instanceof CancellationException;
+    }
+
+    @Override
+    public boolean isDone() {
+      return done.getCount() == 0;
+    }
+
+    @Override
+    public ZMessage get() throws InterruptedException, ExecutionException {
+      done.await();
+      return result();
+    }
+
+    @Override
+    public ZMessage get(final long timeout, final TimeUnit unit)
+        throws InterruptedException, ExecutionException, TimeoutException {
+      if (!done.await(timeout, unit)) {
+        throw new TimeoutException();
+      }
+      return result();
+    }
+
+    private ZMessage result() throws ExecutionException {
+      final Throwable f = failure;
+      if (f instanceof CancellationException) {
+        throw (CancellationException) f;
+      }
+      if (f != null) {
+        throw new ExecutionException(f);
+      }
+      return reply;
+    }
+  }
+}
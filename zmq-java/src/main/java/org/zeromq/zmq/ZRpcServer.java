@@ -0,0 +1,182 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v. 2.0. If a copy of
+ * the MPL was not distributed with this file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.zeromq.zmq;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import zmq.PollItem;
+
+/**
+ * Request/response server over a {@code ZMQ_ROUTER} socket, the counterpart of {@link ZRpcClient}.
+ * <p>
+ * Requests are spread over a number of worker threads through an inproc {@code ZMQ_DEALER}, so a
+ * slow request does not hold up the ones behind it and replies go back in completion order. The
+ * routing identity and correlation id of each request are echoed in front of the reply. If the
+ * handler throws, the worker carries on and replies with {@link #ERROR} appended to the
+ * correlation id, followed by a frame describing the exception.
+ * </p>
+ */
+public class ZRpcServer implements AutoCloseable {
+  private static final AtomicInteger INSTANCES = new AtomicInteger();
+  private static final int SHUTDOWN_CHECK_MILLIS = 100;
+
+  /**
+   * The status byte appended to the correlation id of a reply when the handler threw
+   */
+  public static final byte ERROR = 1;
+
+  /**
+   * Handles a single request
+   */
+  public interface Handler {
+    /**
+     * @param request the request frames, without routing envelope
+     * @return the reply frames, or null to send no reply
+     */
+    ZMessage handle(ZMessage request);
+  }
+
+  private final ZSocket router;
+  private final ZSocket backend;
+  private final String backendEndpoint;
+  private final Handler handler;
+  private final AtomicBoolean isClosed = new AtomicBoolean(false);
+  private final List<Thread> threads = new ArrayList<Thread>();
+
+  /**
+   * Create a server bound to the given endpoint with a single worker
+   *
+   * @param endpoint the endpoint to bind to
+   * @param handler the request handler
+   */
+  public ZRpcServer(final String endpoint, final Handler handler) {
+    this(endpoint, handler, 1);
+  }
+
+  /**
+   * Create a server bound to the given endpoint
+   *
+   * @param endpoint the endpoint to bind to
+   * @param handler the request handler, called concurrently when there is more than one worker
+   * @param workers the number of worker threads
+   */
+  public ZRpcServer(final String endpoint, final Handler handler, final int workers) {
+    if (workers < 1) {
+      throw new IllegalArgumentException("workers must be positive");
+    }
+    this.handler = handler;
+    this.backendEndpoint = "inproc://zmq-rpc-server-" + INSTANCES.incrementAndGet();
+    router = new ZSocket(ZMQ.ZMQ_ROUTER);
+    backend = new ZSocket(ZMQ.ZMQ_DEALER);
+    router.bind(endpoint);
+    backend.bind(backendEndpoint);
+    for (int i = 0; i < workers; i++) {
+      final ZSocket worker = new ZSocket(ZMQ.ZMQ_DEALER);
+      worker.connect(backendEndpoint);
+      threads.add(new Thread("zmq-rpc-worker-" + i) {
+        @Override
+        public void run() {
+          work(worker);
+        }
+      });
+    }
+    threads.add(new Thread("zmq-rpc-server") {
+      @Override
+      public void run() {
+        proxy();
+      }
+    });
+    for (Thread t : threads) {
+      t.setDaemon(true);
+      t.start();
+    }
+  }
+
+  private void proxy() {
+    final PollItem[] items =
+        {new PollItem(router.base(), ZMQ.ZMQ_POLLIN), new PollItem(backend.base(), ZMQ.ZMQ_POLLIN)};
+    while (!isClosed.get()) {
+      zmq.ZMQ.poll(items, SHUTDOWN_CHECK_MILLIS);
+      if (items[0].isReadable()) {
+        forward(router, backend);
+      }
+      if (items[1].isReadable()) {
+        forward(backend, router);
+      }
+    }
+  }
+
+  private static void forward(final ZSocket from, final ZSocket to) {
+    ZFrame frame;
+    while ((frame = from.receiveFrame(ZMQ.ZMQ_DONTWAIT)) != null) {
+      to.sendFrame(frame, frame.hasMore() ? ZMQ.ZMQ_SNDMORE : 0);
+      while (frame.hasMore()) {
+        frame = from.receiveFrame(0);
+        to.sendFrame(frame, frame.hasMore() ? ZMQ.ZMQ_SNDMORE : 0);
+      }
+    }
+  }
+
+  private void work(final ZSocket worker) {
+    final PollItem[] items = {new PollItem(worker.base(), ZMQ.ZMQ_POLLIN)};
+    try {
+      while (!isClosed.get()) {
+        zmq.ZMQ.poll(items, SHUTDOWN_CHECK_MILLIS);
+        ZMessage request;
+        while ((request = worker.receiveMessage(ZMQ.ZMQ_DONTWAIT)) != null) {
+          if (request.size() < 2) {
+            continue;
+          }
+          final ZFrame identity = request.pop();
+          final ZFrame correlationId = request.pop();
+          final ZMessage reply;
+          try {
+            reply = handler.handle(request);
+          } catch (RuntimeException e) {
+            final byte[] status = new byte[correlationId.size() + 1];
+            correlationId.getBytes(0, status, 0, correlationId.size());
+            status[status.length - 1] = ERROR;
+            worker.sendFrame(identity, ZMQ.ZMQ_SNDMORE);
+            worker.send(status, ZMQ.ZMQ_SNDMORE);
+            worker.sendStringUtf8(String.valueOf(e));
+            continue;
+          }
+          if (reply == null) {
+            continue;
+          }
+          worker.sendFrame(identity, ZMQ.ZMQ_SNDMORE);
+          worker.sendFrame(correlationId, reply.isEmpty() ? 0 : ZMQ.ZMQ_SNDMORE);
+          if (!reply.isEmpty()) {
+            worker.sendMessage(reply);
+          }
+        }
+      }
+    } finally {
+      worker.close();
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void close() {
+    if (isClosed.compareAndSet(false, true)) {
+      for (Thread t : threads) {
+        try {
+          t.join();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      router.close();
+      backend.close();
+    }
+  }
+}
@@ -0,0 +1,225 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v. 2.0. If a copy of
+ * the MPL was not distributed with this file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.zeromq.zmq;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import zmq.PollItem;
+
+/**
+ * Sends one request to a set of services in parallel and gathers their replies.
+ * <p>
+ * Each service gets its own {@code ZMQ_DEALER} socket and is addressed with the same correlation id
+ * framing as {@link ZRpcClient}, so the services are typically {@link ZRpcServer}s. A round
+ * completes when the requested quorum of replies has arrived, when too many services have failed
+ * for the quorum to be reached, or when the deadline expires, whichever comes first; replies that
+ * straggle in for an earlier round are discarded. A service whose handler threw answers with a
+ * {@link ZRpcServer#ERROR} reply and is reported as {@link Result#failed(int) failed}. Like
+ * {@link ZSocket}, an instance must only be used from one thread at a time.
+ * </p>
+ */
+public class ZScatterGather implements AutoCloseable {
+  private final ZSocket[] shards;
+  private final PollItem[] items;
+  private final long[] sentAt;
+  private long round;
+
+  /**
+   * Create a scatter-gather over the given service endpoints
+   *
+   * @param endpoints one endpoint per service
+   */
+  public ZScatterGather(final String... endpoints) {
+    shards = new ZSocket[endpoints.length];
+    items = new PollItem[endpoints.length];
+    sentAt = new long[endpoints.length];
+    for (int i = 0; i < endpoints.length; i++) {
+      shards[i] = new ZSocket(ZMQ.ZMQ_DEALER);
+      shards[i].connect(endpoints[i]);
+      items[i] = new PollItem(shards[i].base(), ZMQ.ZMQ_POLLIN);
+    }
+  }
+
+  /**
+   * Send the request to every service and wait for all of their replies
+   *
+   * @param request the request frames; they are not consumed
+   * @param timeoutMillis how long to wait for replies
+   * @return the replies that arrived in time
+   */
+  public Result scatter(final ZMessage request, final long timeoutMillis) {
+    return scatter(request, shards.length, timeoutMillis);
+  }
+
+  /**
+   * Send the request to every service and wait for a quorum of their replies
+   *
+   * @param request the request frames; they are not consumed
+   * @param quorum the number of replies after which to stop waiting
+   * @param timeoutMillis how long to wait for replies
+   * @return the replies that arrived in time
+   */
+  public Result scatter(final ZMessage request, final int quorum, final long timeoutMillis) {
+    final long id = ++round;
+    final long start = System.nanoTime();
+    final long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    final int wanted = quorum <= 0 || quorum > shards.length ? shards.length : quorum;
+    final Result result = new Result(shards.length, wanted);
+    for (int i = 0; i < shards.length; i++) {
+      sentAt[i] = System.nanoTime();
+      send(shards[i], id, request);
+    }
+    while (result.received < wanted && shards.length - result.failed >= wanted) {
+      final long remaining = deadline - System.nanoTime();
+      if (remaining <= 0) {
+        break;
+      }
+      zmq.ZMQ.poll(items, TimeUnit.NANOSECONDS.toMillis(remaining) + 1);
+      for (int i = 0; i < shards.length; i++) {
+        if (items[i].isReadable()) {
+          collect(i, id, result);
+        }
+      }
+    }
+    result.elapsedNanos = System.nanoTime() - start;
+    return result;
+  }
+
+  private static void send(final ZSocket shard, final long id, final ZMessage request) {
+    int remaining = request.size();
+    shard.sendFrame(new ZFrame(8).writeLong(0, id), remaining == 0 ? 0 : ZMQ.ZMQ_SNDMORE);
+    for (ZFrame frame : request) {
+      shard.sendFrame(frame, --remaining == 0 ? 0 : ZMQ.ZMQ_SNDMORE);
+    }
+  }
+
+  private void collect(final int shard, final long id, final Result result) {
+    ZMessage reply;
+    while ((reply = shards[shard].receiveMessage(ZMQ.ZMQ_DONTWAIT)) != null) {
+      final ZFrame correlationId = reply.pop();
+      final boolean error =
+          correlationId.size() == 9 && correlationId.getByte(8) == ZRpcServer.ERROR;
+      if (correlationId.size() != 8 && !error || correlationId.getLong(0) != id
+          || result.latencyNanos[shard] != -1) {
+        continue;
+      }
+      result.latencyNanos[shard] = System.nanoTime() - sentAt[shard];
+      if (error) {
+        final ZFrame description = reply.pop();
+        result.errors[shard] = description == null ? "Handler failed"
+            : description.getStringUtf8(0, description.size());
+        result.failed++;
+      } else {
+        result.replies[shard] = reply;
+        result.received++;
+      }
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void close() {
+    for (ZSocket shard : shards) {
+      shard.close();
+    }
+  }
+
+  /**
+   * The outcome of one scatter-gather round, indexed by the position of each service's endpoint.
+   */
+  public static final class Result {
+    private final ZMessage[] replies;
+    private final String[] errors;
+    private final long[] latencyNanos;
+    private final int quorum;
+    private int received;
+    private int failed;
+    private long elapsedNanos;
+
+    Result(final int shards, final int quorum) {
+      this.replies = new ZMessage[shards];
+      this.errors = new String[shards];
+      this.latencyNanos = new long[shards];
+      this.quorum = quorum;
+      Arrays.fill(latencyNanos, -1);
+    }
+
+    public int shards() {
+      return replies.length;
+    }
+
+    /**
+     * @return the number of services that replied in time
+     */
+    public int received() {
+      return received;
+    }
+
+    /**
+     * @return the number of services whose handler threw
+     */
+    public int failed() {
+      return failed;
+    }
+
+    /**
+     * @return true if at least the requested quorum replied in time
+     */
+    public boolean hasQuorum() {
+      return received >= quorum;
+    }
+
+    /**
+     * @return true if every service replied in time
+     */
+    public boolean isComplete() {
+      return received == replies.length;
+    }
+
+    /**
+     * @param shard the position of the service's endpoint
+     * @return the reply frames, or null if the service failed or did not reply in time
+     */
+    public ZMessage reply(final int shard) {
+      return replies[shard];
+    }
+
+    /**
+     * @param shard the position of the service's endpoint
+     * @return true if the service's handler threw instead of replying
+     */
+    public boolean failed(final int shard) {
+      return errors[shard] != null;
+    }
+
+    /**
+     * @param shard the position of the service's endpoint
+     * @return the service's description of the exception its handler threw, or null if it did not
+     *         fail
+     */
+    public String error(final int shard) {
+      return errors[shard];
+    }
+
+    /**
+     * @param shard the position of the service's endpoint
+     * @return the round trip time in nanoseconds, or -1 if the service did not answer in time
+     */
+    public long latencyNanos(final int shard) {
+      return latencyNanos[shard];
+    }
+
+    /**
+     * @return the time spent in the round in nanoseconds
+     */
+    public long elapsedNanos() {
+      return elapsedNanos;
+    }
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v. 2.0. If a copy of
+ * the MPL was not distributed with this file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.zeromq.zmq;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Publishes over several {@code ZMQ_PUB} sockets, one per endpoint, choosing the socket by a hash
+ * of the topic.
+ * <p>
+ * Messages are a topic frame followed by the payload. A topic always goes out on the same shard, so
+ * its messages keep their order, while the encoding and writing of different topics is spread over
+ * the context's I/O threads: shard i is pinned with {@code ZMQ_AFFINITY} to I/O thread
+ * {@code i % ioThreads}. The context only has one I/O thread unless the
+ * {@code org.zeromq.zmq.ioThreads} system property asks for more before the first socket is
+ * created. Subscribers use {@link ZShardedSubscriber} with the same endpoints in the same order.
+ * Like {@link ZSocket}, an instance must only be used from one thread at a time.
+ * </p>
+ */
+public class ZShardedPublisher implements AutoCloseable {
+  private final ZSocket[] shards;
+
+  /**
+   * Create a publisher with one shard bound to each endpoint
+   *
+   * @param endpoints the shard endpoints, in the order subscribers will list them
+   */
+  public ZShardedPublisher(final String... endpoints) {
+    if (endpoints.length == 0) {
+      throw new IllegalArgumentException("at least one endpoint is required");
+    }
+    final int ioThreads = ManagedContext.getInstance().ioThreads();
+    shards = new ZSocket[endpoints.length];
+    for (int i = 0; i < endpoints.length; i++) {
+      shards[i] = new ZSocket(ZMQ.ZMQ_PUB);
+      shards[i].setOption(ZMQ.ZMQ_AFFINITY, 1L << (i % Math.min(ioThreads, 64)));
+      shards[i].bind(endpoints[i]);
+    }
+  }
+
+  /**
+   * Returns the shard a topic is published on
+   *
+   * @param topic the topic
+   * @param shards the number of shards
+   * @return the shard's index
+   */
+  public static int shard(final byte[] topic, final int shards) {
+    return shard(ByteBuffer.wrap(topic), shards);
+  }
+
+  static int shard(final ByteBuffer topic, final int shards) { // private-package
+    return (int) ((HashRing.position(topic) >>> 1) % shards);
+  }
+
+  public int shards() {
+    return shards.length;
+  }
+
+  public boolean send(final byte[] topic, final byte[] payload) {
+    return send(topic, payload, 0);
+  }
+
+  /**
+   * Publish a payload under a topic
+   *
+   * @param topic the topic, sent as the first frame
+   * @param payload the payload, sent as the second frame
+   * @param flags ZMQ_DONTWAIT or 0
+   * @return true if the message was queued
+   */
+  public boolean send(final byte[] topic, final byte[] payload, final int flags) {
+    final ZSocket shard = shards[shard(topic, shards.length)];
+    return shard.send(topic, flags | ZMQ.ZMQ_SNDMORE) >= 0 && shard.send(payload, flags) >= 0;
+  }
+
+  /**
+   * Publish a message whose first frame is the topic. The message is consumed.
+   *
+   * @param message the topic frame followed by the payload frames
+   * @return true if the message was queued
+   */
+  public boolean sendMessage(final ZMessage message) {
+    final ZFrame topic = message.peek();
+    if (topic == null) {
+      return false;
+    }
+    return shards[shard(topic.byteBuffer, shards.length)].sendMessage(message);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void close() {
+    for (ZSocket shard : shards) {
+      shard.close();
+    }
+  }
+}
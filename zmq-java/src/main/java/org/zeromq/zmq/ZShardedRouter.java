@@ -0,0 +1,173 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v. 2.0. If a copy of
+ * the MPL was not distributed with this file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.zeromq.zmq;
+
+import java.nio.ByteBuffer;
+
+import org.zeromq.ZMQException;
+
+import zmq.ZError;
+
+/**
+ * Routes messages to peers of a {@code ZMQ_ROUTER} socket by a key carried in one of their frames.
+ * <p>
+ * Keys are mapped to peer identities through a consistent-hash ring with virtual nodes, so a key
+ * keeps going to the same peer and only the keys of a joining or leaving peer move. Peers join the
+ * ring when a message from them is received (workers typically announce themselves with a ready
+ * message) or through {@link #addPeer(byte[])}. The socket runs with
+ * {@code ZMQ_ROUTER_MANDATORY}; when a peer turns out to be gone it is removed from the ring and
+ * the message goes to the next peer on the ring instead. Like {@link ZSocket}, an instance must
+ * only be used from one thread at a time.
+ * </p>
+ */
+public class ZShardedRouter implements AutoCloseable {
+  public static final int DEFAULT_VIRTUAL_NODES = 160;
+
+  private final ZSocket router;
+  private final HashRing ring;
+  private final int keyFrame;
+
+  /**
+   * Create a router keyed on the given frame
+   *
+   * @param keyFrame the index of the frame holding the routing key, not counting the identity
+   */
+  public ZShardedRouter(final int keyFrame) {
+    this(keyFrame, DEFAULT_VIRTUAL_NODES);
+  }
+
+  /**
+   * Create a router keyed on the given frame
+   *
+   * @param keyFrame the index of the frame holding the routing key, not counting the identity
+   * @param virtualNodes the number of ring positions per peer
+   */
+  public ZShardedRouter(final int keyFrame, final int virtualNodes) {
+    if (keyFrame < 0) {
+      throw new IllegalArgumentException("keyFrame must not be negative");
+    }
+    this.keyFrame = keyFrame;
+    this.ring = new HashRing(virtualNodes);
+    this.router = new ZSocket(ZMQ.ZMQ_ROUTER);
+    router.setOption(ZMQ.ZMQ_ROUTER_MANDATORY, 1);
+  }
+
+  public boolean bind(final String endpoint) {
+    return router.bind(endpoint);
+  }
+
+  public boolean connect(final String endpoint) {
+    return router.connect(endpoint);
+  }
+
+  /**
+   * Adds a peer to the ring
+   *
+   * @param identity the peer's routing identity
+   * @return false if the peer was already known
+   */
+  public boolean addPeer(final byte[] identity) {
+    return ring.add(identity);
+  }
+
+  /**
+   * Removes a peer from the ring, moving its keys to the peers next to it
+   *
+   * @param identity the peer's routing identity
+   * @return false if the peer was not known
+   */
+  public boolean removePeer(final byte[] identity) {
+    return ring.remove(identity);
+  }
+
+  public int peers() {
+    return ring.size();
+  }
+
+  /**
+   * Returns the identity of the peer currently owning the key
+   *
+   * @param key the routing key
+   * @return the peer identity, or null if there are no peers
+   */
+  public byte[] route(final ZFrame key) {
+    return ring.lookup(key.byteBuffer, 0);
+  }
+
+  public ZMessage receive() {
+    return receive(0);
+  }
+
+  /**
+   * Receives a message, adding its sender to the ring if it is not known yet
+   *
+   * @param flags
+   * @return the message with the sender's identity as first frame, or null if no message was
+   *         available and ZMQ_DONTWAIT was set
+   */
+  public ZMessage receive(final int flags) {
+    final ZMessage message = router.receiveMessage(flags);
+    if (message != null) {
+      final byte[] identity = message.iterator().next().data();
+      if (!ring.contains(identity)) {
+        ring.add(identity);
+      }
+    }
+    return message;
+  }
+
+  /**
+   * Sends a message, without identity frame, to the peer owning its key
+   *
+   * @param message the frames to send; they are not consumed
+   * @return false if no peer could take the message
+   */
+  public boolean send(final ZMessage message) {
+    final ZFrame key = keyFrame(message);
+    int skip = 0;
+    for (;;) {
+      final byte[] identity = ring.lookup(key.byteBuffer, skip);
+      if (identity == null) {
+        return false;
+      }
+      try {
+        if (!router.sendFrame(new ZFrame(ByteBuffer.wrap(identity), true), ZMQ.ZMQ_SNDMORE)) {
+          skip++;
+          continue;
+        }
+      } catch (ZMQException e) {
+        if (e.getErrorCode() != ZError.EHOSTUNREACH) {
+          throw e;
+        }
+        ring.remove(identity);
+        continue;
+      }
+      int remaining = message.size();
+      for (ZFrame frame : message) {
+        router.sendFrame(frame, --remaining == 0 ? 0 : ZMQ.ZMQ_SNDMORE);
+      }
+      return true;
+    }
+  }
+
+  private ZFrame keyFrame(final ZMessage message) {
+    int index = 0;
+    for (ZFrame frame : message) {
+      if (index++ == keyFrame) {
+        return frame;
+      }
+    }
+    throw new IllegalArgumentException("Message has no frame " + keyFrame);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void close() {
+    router.close();
+  }
+}
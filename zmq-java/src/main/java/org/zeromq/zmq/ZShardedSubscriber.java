@@ -0,0 +1,194 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v. 2.0. If a copy of
+ * the MPL was not distributed with this file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.zeromq.zmq;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import zmq.PollItem;
+
+/**
+ * Receives from a {@link ZShardedPublisher}, connecting only to the shards its subscriptions need.
+ * <p>
+ * An exact topic lives on a single shard, so subscribing to it connects to that shard alone. A
+ * prefix may match topics on any shard, so prefix subscriptions (the empty prefix included) connect
+ * to all of them. Each shard is received from through its own {@code ZMQ_SUB} socket; a topic's
+ * messages all come from one shard and keep their order. Native subscriptions match by prefix, so
+ * messages whose topic was only subscribed to as an exact topic are dropped when they do not match
+ * it exactly. Like {@link ZSocket}, an instance must only be used from one thread at a time.
+ * </p>
+ */
+public class ZShardedSubscriber implements AutoCloseable {
+  private final String[] endpoints;
+  private final ZSocket[] shards;
+  private final Map<ByteBuffer, Integer> topics = new HashMap<ByteBuffer, Integer>();
+  private final List<byte[]> prefixes = new ArrayList<byte[]>();
+
+  private PollItem[] items = new PollItem[0];
+  private boolean pollable = true;
+  private ZSocket[] connected = new ZSocket[0];
+  private int next;
+
+  /**
+   * Create a subscriber for the publisher bound to the given endpoints
+   *
+   * @param endpoints the shard endpoints, in the order the publisher was given them
+   */
+  public ZShardedSubscriber(final String... endpoints) {
+    if (endpoints.length == 0) {
+      throw new IllegalArgumentException("at least one endpoint is required");
+    }
+    this.endpoints = endpoints.clone();
+    this.shards = new ZSocket[endpoints.length];
+  }
+
+  /**
+   * Subscribe to messages published under exactly this topic
+   *
+   * @param topic the topic
+   */
+  public void subscribe(final byte[] topic) {
+    final ByteBuffer key = ByteBuffer.wrap(topic.clone());
+    final Integer count = topics.get(key);
+    topics.put(key, count == null ? 1 : count + 1);
+    shard(ZShardedPublisher.shard(topic, shards.length)).subscribe(topic);
+  }
+
+  public void unsubscribe(final byte[] topic) {
+    final ByteBuffer key = ByteBuffer.wrap(topic);
+    final Integer count = topics.get(key);
+    if (count == null) {
+      return;
+    }
+    if (count == 1) {
+      topics.remove(key);
+    } else {
+      topics.put(key, count - 1);
+    }
+    shards[ZShardedPublisher.shard(topic, shards.length)].unsubscribe(topic);
+  }
+
+  /**
+   * Subscribe to messages whose topic starts with the prefix, on every shard
+   *
+   * @param prefix the prefix; empty to receive everything
+   */
+  public void subscribePrefix(final byte[] prefix) {
+    prefixes.add(prefix.clone());
+    for (int i = 0; i < shards.length; i++) {
+      shard(i).subscribe(prefix);
+    }
+  }
+
+  public void unsubscribePrefix(final byte[] prefix) {
+    for (int i = 0; i < prefixes.size(); i++) {
+      if (Arrays.equals(prefixes.get(i), prefix)) {
+        prefixes.remove(i);
+        for (ZSocket shard : shards) {
+          shard.unsubscribe(prefix);
+        }
+        return;
+      }
+    }
+  }
+
+  public ZMessage receiveMessage() {
+    return receiveMessage(-1);
+  }
+
+  /**
+   * Receive the next message from any shard
+   *
+   * @param timeoutMillis how long to wait, or -1 to wait forever
+   * @return the topic frame followed by the payload frames, or null if the time ran out
+   */
+  public ZMessage receiveMessage(final long timeoutMillis) {
+    final long deadline = timeoutMillis < 0 ? Long.MAX_VALUE
+        : System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    int idle = 0;
+    for (;;) {
+      // Start from a different shard each time so a busy one cannot starve the others
+      for (int n = 0; n < connected.length; n++) {
+        final ZSocket shard = connected[next];
+        next = (next + 1) % connected.length;
+        ZMessage message;
+        while ((message = shard.receiveMessage(ZMQ.ZMQ_DONTWAIT)) != null) {
+          if (wanted(message.peek())) {
+            return message;
+          }
+        }
+      }
+      final long remaining = deadline - System.nanoTime();
+      if (remaining <= 0) {
+        return null;
+      }
+      if (pollable && items.length > 0) {
+        zmq.ZMQ.poll(items, timeoutMillis < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(remaining) + 1);
+      } else {
+        // No shards yet, or jvm:// and shm:// shards, which cannot be polled
+        idle = Utils.idle(idle);
+      }
+    }
+  }
+
+  private boolean wanted(final ZFrame topic) {
+    final ByteBuffer bb = topic.byteBuffer;
+    if (topics.containsKey(bb)) {
+      return true;
+    }
+    for (byte[] prefix : prefixes) {
+      if (startsWith(bb, prefix)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean startsWith(final ByteBuffer bb, final byte[] prefix) {
+    if (prefix.length > bb.remaining()) {
+      return false;
+    }
+    final int start = bb.position();
+    for (int i = 0; i < prefix.length; i++) {
+      if (bb.get(start + i) != prefix[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private ZSocket shard(final int index) {
+    if (shards[index] == null) {
+      final ZSocket shard = new ZSocket(ZMQ.ZMQ_SUB);
+      shard.connect(endpoints[index]);
+      shards[index] = shard;
+      connected = Arrays.copyOf(connected, connected.length + 1);
+      connected[connected.length - 1] = shard;
+      if (shard.isNative()) {
+        items = Arrays.copyOf(items, items.length + 1);
+        items[items.length - 1] = new PollItem(shard.base(), ZMQ.ZMQ_POLLIN);
+      } else {
+        pollable = false;
+      }
+    }
+    return shards[index];
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void close() {
+    for (ZSocket shard : connected) {
+      shard.close();
+    }
+  }
+}
@@ -5,13 +5,21 @@
 
 package org.zeromq.zmq;
 
+import java.io.File;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.zeromq.ZMQException;
 
 import zmq.Msg;
+import zmq.PollItem;
 import zmq.SocketBase;
 import zmq.ZError;
 import zmq.ZMQ;
@@ -25,20 +33,65 @@ import zmq.ZMQ;
  * tear down, reconnect and effective delivery are transparent to the user and organized by ZeroMQ
  * itself. Further, messages may be queued in the event that a peer is unavailable to receive them.
  * </p>
+ * <p>
+ * Endpoints using the {@code jvm://} or {@code shm://} transports are served without
+ * zmq.SocketBase: frames are handed by reference to a peer socket in the same JVM, or through a
+ * memory-mapped ring to a peer process on the same host. A socket attached to such an endpoint uses
+ * it for all of its traffic.
+ * </p>
  */
 public class ZSocket implements AutoCloseable {
   public static final Charset UTF8 = Charset.forName("UTF-8");
+  private static final AtomicInteger MONITORS = new AtomicInteger();
   private final SocketBase socketBase;
+  private final int socketType;
 
   private final AtomicBoolean isClosed = new AtomicBoolean(false);
 
+  private Transport transport;
+  private ZFlowControl flowControl;
+  private ZFlowControl.Policy flowPolicy;
+  private boolean admittedMore;
+  private List<byte[]> subscriptions;
+  private SpillQueue spill;
+  private boolean spillingMessage;
+  private boolean sendingMessage;
+  private PollItem[] pollIn;
+  private ZChecksum checksum;
+  private boolean receiveMore;
+  private boolean routedMore;
+  private ZTrace trace;
+  private int traceId;
+  private ZFrame objectFrame;
+  private boolean lingerSet;
+
   /**
    * Create a ZeroMQ socket
    * 
    * @param socketType ZeroMQ socket type
    */
   public ZSocket(final int socketType) {
-    socketBase = ManagedContext.getInstance().createSocket(socketType);
+    this.socketBase = ManagedContext.getInstance().createSocket(socketType);
+    this.socketType = socketType;
+  }
+
+  /**
+   * Create a ZeroMQ socket with the given options applied
+   * 
+   * @param socketType ZeroMQ socket type
+   * @param options the options, applied in the order they were set
+   * @throws ZMQException if the engine rejects one of the options; the socket is closed
+   */
+  public ZSocket(final int socketType, final ZSocketOptions options) {
+    this(socketType);
+    try {
+      for (Map.Entry<Integer, Object> option : options.values().entrySet()) {
+        setOption(option.getKey(), option.getValue());
+      }
+    } catch (RuntimeException e) {
+      close();
+      throw e;
+    }
   }
 
   /**
@@ -48,7 +101,7 @@ public class ZSocket implements AutoCloseable {
    * @return the socket's type.
    */
   public int getType() {
-    return (int) getOption(ZMQ.ZMQ_TYPE);
+    return socketType;
   }
 
   /**
@@ -63,6 +116,9 @@ public class ZSocket implements AutoCloseable {
    * @return returns true if bind to the endpoint was successful
    */
   public boolean bind(final String endpoint) {
+    if (Transports.handles(endpoint)) {
+      return attach(endpoint, true);
+    }
     final boolean result = socketBase.bind(endpoint);
     mayRaise();
     return result;
@@ -78,6 +134,9 @@ public class ZSocket implements AutoCloseable {
    * @return returns true if unbind to the endpoint was successful
    */
   public boolean unbind(final String endpoint) {
+    if (Transports.handles(endpoint)) {
+      return detach();
+    }
     final boolean result = socketBase.bind(endpoint);
     mayRaise();
     return result;
@@ -95,11 +154,63 @@ public class ZSocket implements AutoCloseable {
    * @return returns true if connecting to the endpoint was successful
    */
   public boolean connect(final String endpoint) {
+    if (Transports.handles(endpoint)) {
+      return attach(endpoint, false);
+    }
     final boolean result = socketBase.connect(endpoint);
     mayRaise();
     return result;
   }
 
+  /**
+   * Connects the socket to an endpoint and waits for the connection to complete, so the first send
+   * does not wait for the TCP handshake.
+   * <p>
+   * The wait ends on the socket's next completed connection, so it should not overlap with
+   * reconnects to other endpoints. Endpoints that connect synchronously ({@code inproc://},
+   * {@code jvm://}, {@code shm://}) return as soon as they are connected.
+   * </p>
+   *
+   * @param endpoint the endpoint to connect to
+   * @param timeoutMillis how long to wait, or -1 to wait forever
+   * @return true if the connection completed in time; the socket stays connected either way
+   */
+  public boolean connectAndAwait(final String endpoint, final long timeoutMillis) {
+    if (Transports.handles(endpoint) || endpoint.startsWith("inproc://")) {
+      return connect(endpoint);
+    }
+    final String address = "inproc://zmq-java-monitor-" + MONITORS.incrementAndGet();
+    if (!socketBase.monitor(address, ZMQ.ZMQ_EVENT_CONNECTED)) {
+      mayRaise();
+    }
+    final ManagedContext context = ManagedContext.getInstance();
+    final SocketBase monitor = context.createSocket(ZMQ.ZMQ_PAIR);
+    try {
+      monitor.connect(address);
+      connect(endpoint);
+      final PollItem[] items = {new PollItem(monitor, ZMQ.ZMQ_POLLIN)};
+      final long deadline = timeoutMillis < 0 ? Long.MAX_VALUE
+          : System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+      for (;;) {
+        final ZMQ.Event event = ZMQ.Event.read(monitor, ZMQ.ZMQ_DONTWAIT);
+        if (event != null) {
+          if (event.event == ZMQ.ZMQ_EVENT_CONNECTED) {
+            return true;
+          }
+          continue;
+        }
+        final long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+          return false;
+        }
+        zmq.ZMQ.poll(items, timeoutMillis < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(remaining) + 1);
+      }
+    } finally {
+      socketBase.monitor(null, 0);
+      context.destroy(monitor);
+    }
+  }
+
   /**
    * Disconnecting a socket from an endpoint.
    * 
@@ -107,6 +218,9 @@ public class ZSocket implements AutoCloseable {
    * @return returns true if disconnecting to endpoint was successful
    */
   public boolean disconnect(final String endpoint) {
+    if (Transports.handles(endpoint)) {
+      return detach();
+    }
     final boolean result = socketBase.termEndpoint(endpoint);
     mayRaise();
     return result;
@@ -121,15 +235,160 @@ public class ZSocket implements AutoCloseable {
    * @return true if there are more messages to receive.
    */
   public final boolean hasReceiveMore() {
-    return (int) getOption(ZMQ.ZMQ_RCVMORE) == 1;
+    return receiveMore;
+  }
+
+  /**
+   * Returns the bytes held in frames queued to or from this socket by the binding. Frames queued
+   * inside zmq.SocketBase are not included.
+   *
+   * @return the queued bytes
+   * @see ZMemoryBudget
+   */
+  public long queuedBytes() {
+    return transport == null ? 0 : transport.queuedBytes();
   }
 
   public void subscribe(byte[] topic) {
     setOption(ZMQ.ZMQ_SUBSCRIBE, topic);
+    if (subscriptions == null) {
+      subscriptions = new ArrayList<byte[]>();
+    }
+    subscriptions.add(topic);
+    if (transport != null) {
+      transport.subscribe(topic);
+    }
   }
 
   public void unsubscribe(byte[] topic) {
     setOption(ZMQ.ZMQ_UNSUBSCRIBE, topic);
+    if (subscriptions != null) {
+      for (int i = 0; i < subscriptions.size(); i++) {
+        if (Arrays.equals(subscriptions.get(i), topic)) {
+          subscriptions.remove(i);
+          break;
+        }
+      }
+    }
+    if (transport != null) {
+      transport.unsubscribe(topic);
+    }
+  }
+
+  /**
+   * Installs send-side flow control, consulted before the first frame of every message is sent.
+   * 
+   * @param flowControl the flow control, or null to remove it
+   * @param policy what to do while the flow control withholds permission to send
+   */
+  public void setFlowControl(ZFlowControl flowControl, ZFlowControl.Policy policy) {
+    this.flowControl = flowControl;
+    this.flowPolicy = policy;
+    this.admittedMore = false;
+  }
+
+  /**
+   * Spill messages to disk once the peer stops keeping up, instead of blocking or dropping them.
+   * <p>
+   * Once the socket reaches its high-water mark, messages are appended to memory-mapped segment
+   * files under the directory and sent from there, in order, as the peer catches up. Every send
+   * first drains what it can; {@link #drainSpill()} does the same for a producer with nothing new
+   * to send. Segments are deleted once drained. Those left behind when the socket closes are picked
+   * up by the next socket spilling to the same directory, which must not be shared between sockets.
+   * Only PUSH and DEALER sockets can spill.
+   * </p>
+   * 
+   * @param directory the directory holding the segment files
+   */
+  public void enableSpill(final File directory) {
+    enableSpill(directory, SpillQueue.DEFAULT_SEGMENT_SIZE);
+  }
+
+  /**
+   * @param directory the directory holding the segment files
+   * @param segmentSize the size of each segment file in bytes
+   * @see #enableSpill(File)
+   */
+  public void enableSpill(final File directory, final int segmentSize) {
+    final int type = getType();
+    if (type != ZMQ.ZMQ_PUSH && type != ZMQ.ZMQ_DEALER) {
+      throw new ZMQException(ZError.ENOTSUP);
+    }
+    if (spill != null) {
+      throw new ZMQException(ZError.EINVAL);
+    }
+    spill = new SpillQueue(directory, segmentSize);
+  }
+
+  /**
+   * Sends spilled messages until the queue is empty or the peer stops accepting them.
+   * 
+   * @return the number of messages sent
+   */
+  public int drainSpill() {
+    if (spill == null || spillingMessage || sendingMessage) {
+      return 0;
+    }
+    int drained = 0;
+    boolean first = true;
+    ZFrame frame;
+    while ((frame = spill.peek()) != null) {
+      final boolean more = frame.hasMore();
+      // The rest of a message whose first frame was accepted will be accepted as well
+      final int flags = (more ? ZMQ.ZMQ_SNDMORE : 0) | (first ? ZMQ.ZMQ_DONTWAIT : 0);
+      if (!sendNow(frame, flags)) {
+        break;
+      }
+      spill.advance();
+      first = !more;
+      if (first) {
+        drained++;
+      }
+    }
+    return drained;
+  }
+
+  /**
+   * @return the bytes spilled to disk and not yet sent
+   */
+  public long spilledBytes() {
+    return spill == null ? 0 : spill.bytes();
+  }
+
+  /**
+   * Protect every frame sent and received with a CRC32C trailer. Both ends must enable checksums.
+   * <p>
+   * On a ROUTER socket the identity frame that starts each message is left alone, since the
+   * engine consumes it on sending and adds it on receipt, so a checksummed ROUTER works with
+   * checksummed DEALER or REQ peers. Sockets that relay envelopes, as in a proxy, should not
+   * enable checksums.
+   * </p>
+   * 
+   * @param policy what to do with a received frame whose checksum does not match
+   * @see ZChecksum
+   */
+  public void enableChecksums(final ZChecksum.Policy policy) {
+    checksum = new ZChecksum(policy);
+  }
+
+  /**
+   * @return the number of received frames whose checksum did not match
+   */
+  public long checksumFailures() {
+    return checksum == null ? 0 : checksum.failures();
+  }
+
+  /**
+   * Record the frames this socket sends and receives, as sampled by the trace
+   * 
+   * @param trace the trace, which may be shared with other sockets, or null to stop tracing
+   * @see ZTrace
+   */
+  public void setTrace(final ZTrace trace) {
+    if (traceId == 0) {
+      traceId = ZTrace.socketId();
+    }
+    this.trace = trace;
   }
 
   public int send(byte[] b) {
@@ -137,6 +396,12 @@ public class ZSocket implements AutoCloseable {
   }
 
   public int send(byte[] b, int flags) {
+    if (flowControl != null) {
+      return sendFrame(new ZFrame(ByteBuffer.wrap(b), false), flags) ? b.length : -1;
+    }
+    if (transport != null || spill != null || checksum != null || trace != null) {
+      return dispatch(new ZFrame(ByteBuffer.wrap(b), false), flags) ? b.length : -1;
+    }
     final Msg msg = new Msg(b);
     if (socketBase.send(msg, flags)) {
       return msg.size();
@@ -147,12 +412,74 @@ public class ZSocket implements AutoCloseable {
 
   /**
    * Send a frame
+   * <p>
+   * Over the {@code jvm://} transport the frame itself is handed to the receiver and must not be
+   * modified after this call.
+   * </p>
    * 
    * @param frame
    * @param flags
    * @return return true if successful
    */
   public boolean sendFrame(ZFrame frame, int flags) {
+    if (flowControl != null) {
+      if (!admit(flags, frame.size())) {
+        return false;
+      }
+      if (!dispatch(frame, flags)) {
+        // A frame that was not sent leaves no message to continue
+        admittedMore = false;
+        return false;
+      }
+      return true;
+    }
+    return dispatch(frame, flags);
+  }
+
+  private boolean dispatch(ZFrame frame, final int flags) {
+    if (trace != null) {
+      trace.record(traceId, ZTrace.SEND, frame.byteBuffer, flags);
+    }
+    if (checksum != null) {
+      if (socketType == ZMQ.ZMQ_ROUTER) {
+        return sendRouted(frame, flags);
+      }
+      frame = checksum.seal(frame);
+    }
+    if (spill == null) {
+      return sendNow(frame, flags);
+    }
+    final boolean more = (flags & ZMQ.ZMQ_SNDMORE) != 0;
+    if (sendingMessage) {
+      sendingMessage = more;
+      return sendNow(frame, flags);
+    }
+    if (!spillingMessage) {
+      // Nothing may overtake a spilled message, so the spill has to be empty to send directly
+      if (!spill.isEmpty()) {
+        drainSpill();
+      }
+      if (spill.isEmpty() && sendNow(frame, flags | ZMQ.ZMQ_DONTWAIT)) {
+        sendingMessage = more;
+        return true;
+      }
+    }
+    spill.append(frame.byteBuffer, more);
+    spillingMessage = more;
+    return true;
+  }
+
+  // A ROUTER's first frame names the peer and is consumed by the engine, so it is not sealed
+  private boolean sendRouted(final ZFrame frame, final int flags) {
+    final boolean sent = sendNow(routedMore ? checksum.seal(frame) : frame, flags);
+    routedMore = sent && (flags & ZMQ.ZMQ_SNDMORE) != 0;
+    return sent;
+  }
+
+  private boolean sendNow(final ZFrame frame, final int flags) {
+    if (transport != null) {
+      return transport.send(frame, flags);
+    }
     final ByteBuffer bb = frame.byteBuffer;
     final Msg msg = new Msg(bb);
     if (socketBase.send(msg, flags)) {
@@ -166,7 +493,7 @@ public class ZSocket implements AutoCloseable {
     ZFrame frame = message.pop();
     boolean rc = false;
     while (frame != null) {
-      rc = sendFrame(frame, !message.isEmpty() ? ZMQ.ZMQ_MORE : 0);
+      rc = sendFrame(frame, !message.isEmpty() ? ZMQ.ZMQ_SNDMORE : 0);
       if (!rc) {
         break;
       }
@@ -184,15 +511,314 @@ public class ZSocket implements AutoCloseable {
     return send(b, flags);
   }
 
+  /**
+   * Send an object as a single frame, encoded by the codec registered for its class
+   *
+   * @param value the object
+   * @return true if successful
+   * @see ZCodecs#register(Class, ZCodec)
+   */
+  @SuppressWarnings("unchecked")
+  public <T> boolean sendObject(final T value) {
+    return sendObject(value, ZCodecs.forClass((Class<T>) value.getClass()), 0);
+  }
+
+  /**
+   * Send an object as a single frame
+   * <p>
+   * The codec writes straight into a frame of exactly the encoded size, which is handed to the
+   * engine without further copies.
+   * </p>
+   *
+   * @param value the object
+   * @param codec the codec
+   * @param flags the send flags
+   * @return true if successful
+   */
+  public <T> boolean sendObject(final T value, final ZCodec<? super T> codec, final int flags) {
+    final int size = codec.size(value);
+    final ByteBuffer bb = ByteBuffer.allocate(size);
+    codec.encode(value, bb);
+    if (bb.position() != size) {
+      throw new IllegalStateException("Codec wrote " + bb.position() + " bytes, sized " + size);
+    }
+    bb.flip();
+    return sendFrame(new ZFrame(bb, false), flags);
+  }
+
   public byte[] receive() {
     return receive(0);
   }
 
   public byte[] receive(int flags) {
+    if (transport != null || checksum != null || trace != null) {
+      final ZFrame frame = receiveFrame(flags);
+      return frame == null ? null : frame.data();
+    }
     final Msg msg = socketBase.recv(flags);
+    if (msg == null) {
+      mayRaise();
+      return null;
+    }
+    receiveMore = msg.hasMore();
     return msg.data();
   }
 
+  public ZFrame receiveFrame() {
+    return receiveFrame(0);
+  }
+
+  /**
+   * Receive a frame
+   * <p>
+   * The frame wraps the received buffer without copying it; {@link ZFrame#hasMore()} tells whether
+   * further parts of a multipart message follow.
+   * Over {@code shm://} that buffer lies in the shared ring and is only valid until the next
+   * receive call, or past it while the rest of the same message is read.
+   * </p>
+   * 
+   * @param flags
+   * @return the frame, or null if no frame was available and ZMQ_DONTWAIT was set
+   */
+  public ZFrame receiveFrame(int flags) {
+    releaseReceived();
+    return nextFrame(flags);
+  }
+
+  private ZFrame nextFrame(final int flags) {
+    final ZFrame frame;
+    if (transport != null) {
+      final ZFrame received = transport.receive(flags);
+      if (received == null) {
+        return null;
+      }
+      frame = checksum == null ? received
+          : new ZFrame(verify(received.byteBuffer), received.hasMore());
+    } else {
+      final Msg msg = socketBase.recv(flags);
+      if (msg == null) {
+        mayRaise();
+        return null;
+      }
+      frame = new ZFrame(checksum == null ? msg.buf() : verify(msg.buf()), msg.hasMore());
+    }
+    receiveMore = frame.hasMore();
+    if (trace != null) {
+      trace.record(traceId, ZTrace.RECEIVE, frame.byteBuffer, receiveMore ? 1 : 0);
+    }
+    return frame;
+  }
+
+  public ZMessage receiveMessage() {
+    return receiveMessage(0);
+  }
+
+  /**
+   * Receive all parts of a multipart message
+   * 
+   * @param flags applied to the first frame; the remaining parts are already queued
+   * @return the message, or null if no message was available and ZMQ_DONTWAIT was set
+   */
+  public ZMessage receiveMessage(int flags) {
+    releaseReceived();
+    ZFrame frame = nextFrame(flags);
+    if (frame == null) {
+      return null;
+    }
+    final ZMessage message = new ZMessage();
+    message.add(frame);
+    while (frame.hasMore()) {
+      frame = nextFrame(0);
+      message.add(frame);
+    }
+    return message;
+  }
+
+  /**
+   * Receive up to max frames in one call
+   * <p>
+   * Blocks until the first frame arrives or the timeout expires, then takes whatever is already
+   * queued without waiting. Frames already in the array are refilled in place and null slots get
+   * new frames. A multipart message may be split across calls: {@link ZFrame#hasMore()} is set on
+   * every frame but the last of each message.
+   * </p>
+   *
+   * @param into the frames to fill, from index 0
+   * @param max the most frames to receive
+   * @param timeoutMillis how long to wait for the first frame, 0 not to wait, -1 to wait forever
+   * @return the number of frames received
+   */
+  public int receiveBatch(final ZFrame[] into, final int max, final long timeoutMillis) {
+    final int n = Math.min(max, into.length);
+    // Frame batches may split a message anyway, so nothing is held back for the rest of it
+    if (transport != null) {
+      transport.release();
+    }
+    if (n <= 0 || !receiveFirst(frame(into, 0), timeoutMillis)) {
+      return 0;
+    }
+    int received = 1;
+    while (received < n && receiveInto(frame(into, received), ZMQ.ZMQ_DONTWAIT)) {
+      received++;
+    }
+    return received;
+  }
+
+  /**
+   * Receive up to max whole messages in one call
+   * <p>
+   * Blocks until the first message arrives or the timeout expires, then takes whatever is already
+   * queued without waiting. Messages already in the array are refilled in place, reusing their
+   * frames, and null slots get new messages. Messages past the last one received are left as they
+   * were.
+   * </p>
+   *
+   * @param into the messages to fill, from index 0
+   * @param max the most messages to receive
+   * @param timeoutMillis how long to wait for the first message, 0 not to wait, -1 to wait forever
+   * @return the number of messages received
+   * @throws ZMQException with {@code EAGAIN} if the first frame of a message arrived but not the
+   *         rest, as when a receive timeout expires part way through a message
+   */
+  public int receiveBatch(final ZMessage[] into, final int max, final long timeoutMillis) {
+    final int n = Math.min(max, into.length);
+    releaseReceived();
+    if (n <= 0) {
+      return 0;
+    }
+    int received = 0;
+    while (received < n) {
+      ZMessage message = into[received];
+      if (message == null) {
+        message = into[received] = new ZMessage();
+      }
+      // Frames are taken off the front and put back refilled, and leftovers dropped at the end.
+      // A failed receive leaves its frame untouched, so the first one is only taken off after.
+      int reusable = message.size();
+      ZFrame frame = reusable > 0 ? message.peek() : new ZFrame();
+      final boolean got = received == 0 ? receiveFirst(frame, timeoutMillis)
+          : receiveInto(frame, ZMQ.ZMQ_DONTWAIT);
+      if (!got) {
+        break;
+      }
+      if (reusable-- > 0) {
+        message.pop();
+      }
+      message.add(frame);
+      while (frame.hasMore()) {
+        frame = reusable-- > 0 ? message.pop() : new ZFrame();
+        if (!receiveInto(frame, 0)) {
+          throw new ZMQException("Message cut short after " + message.size() + " frames",
+              ZError.EAGAIN);
+        }
+        message.add(frame);
+      }
+      while (reusable-- > 0) {
+        message.pop();
+      }
+      received++;
+    }
+    return received;
+  }
+
+  private static ZFrame frame(final ZFrame[] frames, final int index) {
+    if (frames[index] == null) {
+      frames[index] = new ZFrame();
+    }
+    return frames[index];
+  }
+
+  private boolean receiveFirst(final ZFrame frame, final long timeoutMillis) {
+    if (receiveInto(frame, ZMQ.ZMQ_DONTWAIT)) {
+      return true;
+    }
+    final long deadline = timeoutMillis < 0 ? Long.MAX_VALUE
+        : System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    int idle = 0;
+    for (;;) {
+      final long remaining = deadline - System.nanoTime();
+      if (remaining <= 0) {
+        return false;
+      }
+      if (transport != null) {
+        idle = Utils.idle(idle);
+      } else {
+        if (pollIn == null) {
+          pollIn = new PollItem[] {new PollItem(socketBase, ZMQ.ZMQ_POLLIN)};
+        }
+        zmq.ZMQ.poll(pollIn, timeoutMillis < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(remaining) + 1);
+      }
+      if (receiveInto(frame, ZMQ.ZMQ_DONTWAIT)) {
+        return true;
+      }
+    }
+  }
+
+  // Over shm:// received frames are slices of the ring until the transport releases them: before
+  // each receive call, but not part way through a message read frame by frame
+  private void releaseReceived() {
+    if (transport != null && !receiveMore) {
+      transport.release();
+    }
+  }
+
+  private boolean receiveInto(final ZFrame frame, final int flags) {
+    if (transport != null) {
+      final ZFrame received = transport.receive(flags);
+      if (received == null) {
+        return false;
+      }
+      frame.wrap(checksum == null ? received.byteBuffer : verify(received.byteBuffer));
+      frame.setMore(received.hasMore());
+    } else {
+      final Msg msg = socketBase.recv(flags);
+      if (msg == null) {
+        mayRaise();
+        return false;
+      }
+      frame.wrap(checksum == null ? msg.buf() : verify(msg.buf()));
+      frame.setMore(msg.hasMore());
+    }
+    receiveMore = frame.hasMore();
+    if (trace != null) {
+      trace.record(traceId, ZTrace.RECEIVE, frame.byteBuffer, receiveMore ? 1 : 0);
+    }
+    return true;
+  }
+
+  // A ROUTER's first frame is the identity the engine added on receipt, so it carries no checksum
+  private ByteBuffer verify(final ByteBuffer buffer) {
+    return socketType == ZMQ.ZMQ_ROUTER && !receiveMore ? buffer : checksum.verify(buffer);
+  }
+
+  /**
+   * Receive a frame and decode it with the codec registered for the class
+   *
+   * @param type the class of the object expected
+   * @return the object
+   */
+  public <T> T receiveObject(final Class<T> type) {
+    return receiveObject(ZCodecs.forClass(type), 0);
+  }
+
+  /**
+   * Receive a frame and decode it, reading directly from the received buffer
+   *
+   * @param codec the codec
+   * @param flags the receive flags
+   * @return the object, or null if no frame was available and ZMQ_DONTWAIT was set
+   */
+  public <T> T receiveObject(final ZCodec<T> codec, final int flags) {
+    if (objectFrame == null) {
+      objectFrame = new ZFrame();
+    }
+    releaseReceived();
+    if (!receiveInto(objectFrame, flags)) {
+      return null;
+    }
+    return codec.decode(objectFrame.byteBuffer);
+  }
+
   public String receiveStringUtf8() {
     return receiveStringUtf8(0);
   }
@@ -202,6 +828,60 @@ public class ZSocket implements AutoCloseable {
     return new String(b, UTF8);
   }
 
+  // A message is admitted as a whole on its first frame, so it is never refused part way through
+  private boolean admit(final int flags, final int bytes) {
+    final boolean more = (flags & ZMQ.ZMQ_SNDMORE) != 0;
+    if (admittedMore) {
+      flowControl.charge(bytes);
+      admittedMore = more;
+      return true;
+    }
+    if (!flowControl.tryAcquire(1, bytes)) {
+      if ((flags & ZMQ.ZMQ_DONTWAIT) != 0 || flowPolicy == ZFlowControl.Policy.FAIL_FAST) {
+        return false;
+      }
+      int idle = 0;
+      while (!flowControl.tryAcquire(1, bytes)) {
+        if (flowPolicy == ZFlowControl.Policy.BLOCK) {
+          idle = Utils.idle(idle);
+        }
+      }
+    }
+    admittedMore = more;
+    return true;
+  }
+
+  SocketBase base() { // private-package
+    return socketBase;
+  }
+
+  // False once attached to a jvm:// or shm:// endpoint, whose traffic cannot be polled
+  boolean isNative() { // private-package
+    return transport == null;
+  }
+
+  private boolean attach(final String endpoint, final boolean bind) {
+    if (transport != null) {
+      throw new ZMQException(ZError.EISCONN);
+    }
+    transport = Transports.open(getType(), endpoint, bind);
+    if (subscriptions != null) {
+      for (byte[] topic : subscriptions) {
+        transport.subscribe(topic);
+      }
+    }
+    return true;
+  }
+
+  private boolean detach() {
+    if (transport == null) {
+      return false;
+    }
+    transport.close();
+    transport = null;
+    return true;
+  }
+
   private void mayRaise() {
     final int errno = socketBase.errno();
     if (errno != 0 && errno != ZError.EAGAIN) {
@@ -209,24 +889,28 @@ public class ZSocket implements AutoCloseable {
     }
   }
 
-  private void setOption(int option, Object value) {
+  // The engine reports bad options as IllegalArgumentException or ClassCastException
+  void setOption(int option, Object value) { // private-package
     try {
       socketBase.setSocketOpt(option, value);
-    } catch (ZMQException e) {
+      lingerSet |= option == ZMQ.ZMQ_LINGER;
+    } catch (IllegalArgumentException | ClassCastException e) {
+      throw new ZMQException("Invalid socket option " + option + ": " + e.getMessage(),
+          ZError.EINVAL);
     }
   }
 
-  private Object getOption(int option) {
-    return socketBase.getsockoptx(option);
-  }
-
   /**
    * {@inheritDoc}
    */
   @Override
   public void close() {
     if (isClosed.compareAndSet(false, true)) {
-      ManagedContext.getInstance().destroy(socketBase);
+      detach();
+      if (spill != null) {
+        spill.flush();
+      }
+      ManagedContext.getInstance().destroy(socketBase, lingerSet);
     }
   }
 }
@@ -0,0 +1,245 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v. 2.0. If a copy of
+ * the MPL was not distributed with this file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.zeromq.zmq;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Validated socket options, applied when a {@link ZSocket} is created with
+ * {@link ZSocket#ZSocket(int, ZSocketOptions)}.
+ * <p>
+ * Each setter checks its value as it is given and {@link Builder#build()} checks that the options
+ * make sense together, throwing IllegalArgumentException rather than leaving a socket
+ * misconfigured. Options that are not set keep the engine's defaults. The presets are builders, so
+ * any of their settings can be overridden before building:
+ * </p>
+ *
+ * <pre>
+ * new ZSocket(ZMQ_DEALER, ZSocketOptions.lowLatency().identity(id).build());
+ * </pre>
+ */
+public final class ZSocketOptions {
+  private final Map<Integer, Object> values;
+
+  private ZSocketOptions(final Map<Integer, Object> values) {
+    this.values = Collections.unmodifiableMap(new LinkedHashMap<Integer, Object>(values));
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Short queues so messages do not wait behind a backlog, no lingering on close, quick
+   * reconnects, and no queuing towards peers whose connection is not complete yet.
+   */
+  public static Builder lowLatency() {
+    return new Builder().sendHighWaterMark(1000).receiveHighWaterMark(1000).linger(0)
+        .reconnectInterval(10).reconnectIntervalMax(100).immediate(true);
+  }
+
+  /**
+   * Deep queues and large kernel buffers so the I/O thread writes in big batches, and a linger
+   * long enough to flush the queues after close. The flush happens in the background, so it only
+   * completes if the process is still running.
+   */
+  public static Builder bulkThroughput() {
+    return new Builder().sendHighWaterMark(100000).receiveHighWaterMark(100000)
+        .sendBufferSize(4 * 1024 * 1024).receiveBufferSize(4 * 1024 * 1024).linger(30000)
+        .reconnectInterval(100).reconnectIntervalMax(5000);
+  }
+
+  /**
+   * For publishers and subscribers that would rather drop than fall behind: bounded queues, which
+   * PUB sockets drop beyond, no lingering on close, and keepalives to detect dead peers.
+   */
+  public static Builder lossyPubSub() {
+    return new Builder().sendHighWaterMark(10000).receiveHighWaterMark(10000).linger(0)
+        .reconnectInterval(100).reconnectIntervalMax(1000).tcpKeepAlive(true);
+  }
+
+  /**
+   * @return the options that were set, by option number, in the order they were set
+   */
+  Map<Integer, Object> values() { // private-package
+    return values;
+  }
+
+  @Override
+  public String toString() {
+    return "ZSocketOptions" + values;
+  }
+
+  /**
+   * Collects options for {@link ZSocketOptions}, checking each value as it is set. Setting an
+   * option again replaces the earlier value.
+   */
+  public static final class Builder {
+    private final Map<Integer, Object> values = new LinkedHashMap<Integer, Object>();
+
+    private Builder() {}
+
+    /**
+     * @param messages the most messages queued for sending per peer, 0 for no limit
+     */
+    public Builder sendHighWaterMark(final int messages) {
+      return set(ZMQ.ZMQ_SNDHWM, atLeast("sendHighWaterMark", messages, 0));
+    }
+
+    /**
+     * @param messages the most messages queued on receipt per peer, 0 for no limit
+     */
+    public Builder receiveHighWaterMark(final int messages) {
+      return set(ZMQ.ZMQ_RCVHWM, atLeast("receiveHighWaterMark", messages, 0));
+    }
+
+    /**
+     * @param bytes the kernel send buffer size, 0 for the OS default
+     */
+    public Builder sendBufferSize(final int bytes) {
+      return set(ZMQ.ZMQ_SNDBUF, atLeast("sendBufferSize", bytes, 0));
+    }
+
+    /**
+     * @param bytes the kernel receive buffer size, 0 for the OS default
+     */
+    public Builder receiveBufferSize(final int bytes) {
+      return set(ZMQ.ZMQ_RCVBUF, atLeast("receiveBufferSize", bytes, 0));
+    }
+
+    /**
+     * @param millis how long pending messages are kept after close, -1 for as long as it takes
+     */
+    public Builder linger(final int millis) {
+      return set(ZMQ.ZMQ_LINGER, atLeast("linger", millis, -1));
+    }
+
+    /**
+     * @param millis the delay before reconnecting, -1 not to reconnect
+     */
+    public Builder reconnectInterval(final int millis) {
+      return set(ZMQ.ZMQ_RECONNECT_IVL, atLeast("reconnectInterval", millis, -1));
+    }
+
+    /**
+     * @param millis the most the reconnect delay backs off to, 0 not to back off
+     */
+    public Builder reconnectIntervalMax(final int millis) {
+      return set(ZMQ.ZMQ_RECONNECT_IVL_MAX, atLeast("reconnectIntervalMax", millis, 0));
+    }
+
+    /**
+     * @param mask the I/O threads new connections may use, one bit per thread
+     */
+    public Builder affinity(final long mask) {
+      if (mask == 0) {
+        throw new IllegalArgumentException("affinity must select at least one I/O thread");
+      }
+      return set(ZMQ.ZMQ_AFFINITY, mask);
+    }
+
+    /**
+     * @param identity the routing identity, 1 to 255 bytes not starting with a zero byte
+     */
+    public Builder identity(final byte[] identity) {
+      if (identity.length == 0 || identity.length > 255 || identity[0] == 0) {
+        throw new IllegalArgumentException("identity must be 1 to 255 bytes, not starting with 0");
+      }
+      return set(ZMQ.ZMQ_IDENTITY, identity.clone());
+    }
+
+    /**
+     * @param millis how long a blocking send waits, -1 for ever
+     */
+    public Builder sendTimeout(final int millis) {
+      return set(ZMQ.ZMQ_SNDTIMEO, atLeast("sendTimeout", millis, -1));
+    }
+
+    /**
+     * @param millis how long a blocking receive waits, -1 for ever
+     */
+    public Builder receiveTimeout(final int millis) {
+      return set(ZMQ.ZMQ_RCVTIMEO, atLeast("receiveTimeout", millis, -1));
+    }
+
+    /**
+     * @param connections the length of the queue of pending connections on a bound socket
+     */
+    public Builder backlog(final int connections) {
+      return set(ZMQ.ZMQ_BACKLOG, atLeast("backlog", connections, 1));
+    }
+
+    /**
+     * @param bytes the largest message accepted from a peer, -1 for no limit
+     */
+    public Builder maxMessageSize(final long bytes) {
+      if (bytes < -1) {
+        throw new IllegalArgumentException("maxMessageSize must be at least -1");
+      }
+      return set(ZMQ.ZMQ_MAXMSGSIZE, bytes);
+    }
+
+    /**
+     * @param immediate true to queue messages only to peers whose connection is complete
+     */
+    public Builder immediate(final boolean immediate) {
+      return set(ZMQ.ZMQ_DELAY_ATTACH_ON_CONNECT, immediate ? 1 : 0);
+    }
+
+    /**
+     * @param enabled whether TCP connections send keepalive probes
+     */
+    public Builder tcpKeepAlive(final boolean enabled) {
+      return set(ZMQ.ZMQ_TCP_KEEPALIVE, enabled ? 1 : 0);
+    }
+
+    /**
+     * Enables TCP keepalives with the given timing.
+     * <p>
+     * The timing is passed to the engine, but the JeroMQ engine used by this binding only applies
+     * {@code SO_KEEPALIVE}, so probes follow the operating system's keepalive settings.
+     * </p>
+     *
+     * @param idleSeconds the idle time before the first probe
+     * @param count the unanswered probes after which the connection is dropped
+     * @param intervalSeconds the time between probes
+     */
+    public Builder tcpKeepAlive(final int idleSeconds, final int count, final int intervalSeconds) {
+      tcpKeepAlive(true);
+      set(ZMQ.ZMQ_TCP_KEEPALIVE_IDLE, atLeast("idleSeconds", idleSeconds, 1));
+      set(ZMQ.ZMQ_TCP_KEEPALIVE_CNT, atLeast("count", count, 1));
+      return set(ZMQ.ZMQ_TCP_KEEPALIVE_INTVL, atLeast("intervalSeconds", intervalSeconds, 1));
+    }
+
+    public ZSocketOptions build() {
+      final Integer interval = (Integer) values.get(ZMQ.ZMQ_RECONNECT_IVL);
+      final Integer max = (Integer) values.get(ZMQ.ZMQ_RECONNECT_IVL_MAX);
+      if (interval != null && max != null && max != 0 && max < interval) {
+        throw new IllegalArgumentException("reconnectIntervalMax is below reconnectInterval");
+      }
+      if (values.containsKey(ZMQ.ZMQ_TCP_KEEPALIVE_IDLE)
+          && Integer.valueOf(0).equals(values.get(ZMQ.ZMQ_TCP_KEEPALIVE))) {
+        throw new IllegalArgumentException("keepalive timing is set but keepalives are disabled");
+      }
+      return new ZSocketOptions(values);
+    }
+
+    private Builder set(final int option, final Object value) {
+      values.remove(option);
+      values.put(option, value);
+      return this;
+    }
+
+    private static int atLeast(final String name, final int value, final int min) {
+      if (value < min) {
+        throw new IllegalArgumentException(name + " must be at least " + min + ", was " + value);
+      }
+      return value;
+    }
+  }
+}
@@ -0,0 +1,97 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v. 2.0. If a copy of
+ * the MPL was not distributed with this file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.zeromq.zmq;
+
+/**
+ * Rate limiter admitting messages and bytes at a steady rate with bounded bursts.
+ * <p>
+ * The bucket refills continuously at the configured rates up to one second's worth of tokens, or
+ * the given burst sizes. A rate of zero leaves that dimension unlimited. The bucket may be shared
+ * between sockets to cap their combined rate.
+ * </p>
+ */
+public class ZTokenBucket implements ZFlowControl {
+  private static final long NANOS_PER_SECOND = 1000000000L;
+
+  private final long messagesPerSecond;
+  private final long bytesPerSecond;
+  private final double messageBurst;
+  private final double byteBurst;
+
+  private double messageTokens;
+  private double byteTokens;
+  private long lastRefill;
+
+  /**
+   * Create a bucket allowing bursts of one second's worth of traffic
+   *
+   * @param messagesPerSecond the sustained message rate, or 0 for no limit
+   * @param bytesPerSecond the sustained byte rate, or 0 for no limit
+   */
+  public ZTokenBucket(final long messagesPerSecond, final long bytesPerSecond) {
+    this(messagesPerSecond, bytesPerSecond, messagesPerSecond, bytesPerSecond);
+  }
+
+  /**
+   * Create a bucket
+   *
+   * @param messagesPerSecond the sustained message rate, or 0 for no limit
+   * @param bytesPerSecond the sustained byte rate, or 0 for no limit
+   * @param messageBurst the most messages admitted back to back
+   * @param byteBurst the most bytes admitted back to back
+   */
+  public ZTokenBucket(final long messagesPerSecond, final long bytesPerSecond,
+      final long messageBurst, final long byteBurst) {
+    if (messagesPerSecond < 0 || bytesPerSecond < 0 || messageBurst < 0 || byteBurst < 0) {
+      throw new IllegalArgumentException("Rates and bursts must not be negative");
+    }
+    this.messagesPerSecond = messagesPerSecond;
+    this.bytesPerSecond = bytesPerSecond;
+    this.messageBurst = Math.max(1, messageBurst);
+    this.byteBurst = Math.max(1, byteBurst);
+    this.messageTokens = this.messageBurst;
+    this.byteTokens = this.byteBurst;
+    this.lastRefill = System.nanoTime();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public synchronized boolean tryAcquire(final int messages, final int bytes) {
+    refill();
+    final boolean messagesOk = messagesPerSecond == 0 || messageTokens >= messages;
+    // A frame larger than the burst is let through once the bucket is full, or it would never go
+    final boolean bytesOk = bytesPerSecond == 0 || byteTokens >= Math.min(bytes, byteBurst);
+    if (!messagesOk || !bytesOk) {
+      return false;
+    }
+    messageTokens -= messages;
+    byteTokens -= bytes;
+    return true;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public synchronized void charge(final int bytes) {
+    refill();
+    byteTokens -= bytes;
+  }
+
+  private void refill() {
+    final long now = System.nanoTime();
+    final long elapsed = now - lastRefill;
+    if (elapsed <= 0) {
+      return;
+    }
+    lastRefill = now;
+    final double seconds = (double) elapsed / NANOS_PER_SECOND;
+    messageTokens = Math.min(messageBurst, messageTokens + seconds * messagesPerSecond);
+    byteTokens = Math.min(byteBurst, byteTokens + seconds * bytesPerSecond);
+  }
+}
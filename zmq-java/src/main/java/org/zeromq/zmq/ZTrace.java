@@ -0,0 +1,281 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v. 2.0. If a copy of
+ * the MPL was not distributed with this file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package org.zeromq.zmq;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.zeromq.ZMQException;
+
+import zmq.ZError;
+
+/**
+ * Sampled tracing of the frames sent and received by sockets, attached with
+ * {@link ZSocket#setTrace(ZTrace)}.
+ * <p>
+ * Each sampled frame is recorded into a ring of preallocated slots: the socket, the direction, the
+ * size, the send flags or the more flag, and a preview of the first bytes. Recording does not
+ * allocate, and the oldest records are overwritten once the ring is full. Records are formatted
+ * only when {@link #dump(Appendable)} is called or while they are streamed to a file with
+ * {@link #streamTo(File)}. The sample rate can be changed at any time; at 0 a traced socket pays
+ * for one volatile read per frame, though its byte[] sends and receives go through frames. A socket
+ * without a trace pays nothing. A trace may be shared by sockets used from different threads.
+ * </p>
+ */
+public final class ZTrace implements AutoCloseable {
+  static final int SEND = 0; // private-package
+  static final int RECEIVE = 1; // private-package
+
+  private static final Charset ASCII = Charset.forName("US-ASCII");
+  private static final AtomicLong SOCKETS = new AtomicLong();
+
+  private final int mask;
+  private final int previewBytes;
+  private final long epoch = System.nanoTime();
+  // Per slot: 0 when empty, -1 while being written, otherwise the record's sequence plus one
+  private final AtomicLongArray published;
+  private final long[] times;
+  private final int[] sockets;
+  private final byte[] directions;
+  private final int[] sizes;
+  private final int[] flags;
+  private final int[] previewLengths;
+  private final byte[] previews;
+  private final AtomicLong next = new AtomicLong();
+  private final AtomicLong frames = new AtomicLong();
+
+  private volatile int sampleEvery;
+  private volatile Thread streamer;
+
+  /**
+   * Create a trace recording every frame
+   *
+   * @param capacity the records kept, rounded up to a power of two
+   * @param previewBytes the leading bytes of each frame kept in its record
+   */
+  public ZTrace(final int capacity, final int previewBytes) {
+    if (capacity < 1 || capacity > 1 << 24 || previewBytes < 0) {
+      throw new IllegalArgumentException("capacity must be 1 to 2^24 and previewBytes at least 0");
+    }
+    final int slots = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+    this.mask = slots - 1;
+    this.previewBytes = previewBytes;
+    this.published = new AtomicLongArray(slots);
+    this.times = new long[slots];
+    this.sockets = new int[slots];
+    this.directions = new byte[slots];
+    this.sizes = new int[slots];
+    this.flags = new int[slots];
+    this.previewLengths = new int[slots];
+    this.previews = new byte[slots * previewBytes];
+    this.sampleEvery = 1;
+  }
+
+  /**
+   * Record one frame in every n, counted across all the sockets sharing this trace
+   *
+   * @param n 1 to record every frame, 0 to record none
+   */
+  public void setSampleEvery(final int n) {
+    if (n < 0) {
+      throw new IllegalArgumentException("n must be at least 0, was " + n);
+    }
+    sampleEvery = n;
+  }
+
+  public int getSampleEvery() {
+    return sampleEvery;
+  }
+
+  /**
+   * @return the number of records made since the trace was created, including overwritten ones
+   */
+  public long recorded() {
+    return next.get();
+  }
+
+  static int socketId() { // private-package
+    return (int) SOCKETS.incrementAndGet();
+  }
+
+  // private-package
+  void record(final int socket, final int direction, final ByteBuffer frame, final int frameFlags) {
+    final int every = sampleEvery;
+    if (every == 0 || every > 1 && frames.getAndIncrement() % every != 0) {
+      return;
+    }
+    final long sequence = next.getAndIncrement();
+    final int slot = (int) sequence & mask;
+    published.set(slot, -1);
+    times[slot] = System.nanoTime();
+    sockets[slot] = socket;
+    directions[slot] = (byte) direction;
+    sizes[slot] = frame.remaining();
+    flags[slot] = frameFlags;
+    final int length = Math.min(previewBytes, frame.remaining());
+    final int start = frame.position();
+    final int base = slot * previewBytes;
+    for (int i = 0; i < length; i++) {
+      previews[base + i] = frame.get(start + i);
+    }
+    previewLengths[slot] = length;
+    published.set(slot, sequence + 1);
+  }
+
+  /**
+   * Write the records still in the ring, oldest first, one line each
+   *
+   * @param out where to write them
+   * @return the number of records written
+   */
+  public int dump(final Appendable out) throws IOException {
+    final long end = next.get();
+    final char[] line = new char[previewBytes * 3];
+    int written = 0;
+    for (long sequence = Math.max(0, end - mask - 1); sequence < end; sequence++) {
+      if (format(sequence, line, out)) {
+        written++;
+      }
+    }
+    return written;
+  }
+
+  /**
+   * Write records to a file as they are made, from a background thread, until {@link #close()}.
+   * Records overwritten before the thread reached them are reported as lost.
+   *
+   * @param file the file to append to
+   */
+  public synchronized void streamTo(final File file) {
+    if (streamer != null) {
+      throw new ZMQException(ZError.EINVAL);
+    }
+    final Writer out;
+    try {
+      out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), ASCII));
+    } catch (IOException e) {
+      throw new ZMQException(e.getMessage(), ZError.EIOEXC);
+    }
+    final Thread thread = new Thread("zmq-trace-" + file.getName()) {
+      @Override
+      public void run() {
+        stream(this, out);
+      }
+    };
+    thread.setDaemon(true);
+    streamer = thread;
+    thread.start();
+  }
+
+  private void stream(final Thread self, final Writer out) {
+    final char[] line = new char[previewBytes * 3];
+    long cursor = Math.max(0, next.get() - mask - 1);
+    try {
+      try {
+        boolean stopping = false;
+        while (!stopping) {
+          stopping = streamer != self;
+          final long end = next.get();
+          if (end - cursor > mask + 1) {
+            out.append("lost ").append(String.valueOf(end - mask - 1 - cursor)).append('\n');
+            cursor = end - mask - 1;
+          }
+          while (cursor < end) {
+            // A record not yet published is retried on the next pass; an overwritten one is skipped
+            if (!format(cursor, line, out) && published.get((int) cursor & mask) <= cursor
+                && !stopping) {
+              break;
+            }
+            cursor++;
+          }
+          out.flush();
+          if (!stopping) {
+            Thread.sleep(10);
+          }
+        }
+      } finally {
+        out.close();
+      }
+    } catch (IOException | InterruptedException e) {
+      // Streaming ends with the error; the ring is still available to dump()
+    }
+  }
+
+  // Copies the record out of its slot, then checks it was not overwritten meanwhile
+  private boolean format(final long sequence, final char[] line, final Appendable out)
+      throws IOException {
+    final int slot = (int) sequence & mask;
+    if (published.get(slot) != sequence + 1) {
+      return false;
+    }
+    final long time = times[slot];
+    final int socket = sockets[slot];
+    final int direction = directions[slot];
+    final int size = sizes[slot];
+    final int frameFlags = flags[slot];
+    final int length = Math.min(previewLengths[slot], previewBytes);
+    final int base = slot * previewBytes;
+    final int hex = Utils.toHex(previews, base, length, line, 0);
+    for (int i = 0; i < length; i++) {
+      final int c = previews[base + i] & 0xff;
+      line[hex + i] = c >= 0x20 && c < 0x7f ? (char) c : '.';
+    }
+    if (published.get(slot) != sequence + 1) {
+      return false;
+    }
+    out.append(String.valueOf(TimeUnit.NANOSECONDS.toMicros(time - epoch))).append("us socket=")
+        .append(String.valueOf(socket)).append(direction == SEND ? " send " : " recv ")
+        .append(String.valueOf(size)).append('B');
+    if (direction == SEND) {
+      if ((frameFlags & ZMQ.ZMQ_SNDMORE) != 0) {
+        out.append(" SNDMORE");
+      }
+      if ((frameFlags & ZMQ.ZMQ_DONTWAIT) != 0) {
+        out.append(" DONTWAIT");
+      }
+    } else if (frameFlags != 0) {
+      out.append(" MORE");
+    }
+    out.append(' ');
+    for (int i = 0; i < hex; i++) {
+      out.append(line[i]);
+    }
+    out.append(" |");
+    for (int i = hex; i < hex + length; i++) {
+      out.append(line[i]);
+    }
+    out.append(size > length ? "|...\n" : "|\n");
+    return true;
+  }
+
+  /**
+   * Stop streaming, after writing the records made so far
+   */
+  @Override
+  public void close() {
+    final Thread thread;
+    synchronized (this) {
+      thread = streamer;
+      streamer = null;
+    }
+    if (thread != null) {
+      try {
+        thread.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+}
@@ -0,0 +1,204 @@
+package org.zeromq.zmq;
+
+import static org.junit.Assert.assertTrue;
+import static org.zeromq.zmq.ZMQ.ZMQ_PULL;
+import static org.zeromq.zmq.ZMQ.ZMQ_PUSH;
+import static org.zeromq.zmq.ZMQ.ZMQ_SNDMORE;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Allocation budgets for the hot paths, in bytes per operation, measured with the per-thread
+ * allocation counter of the HotSpot ThreadMXBean. A socket operation is a send and the receive of
+ * what was sent, over inproc:// unless stated otherwise. Each operation is run enough times first
+ * for the JIT to compile it and for escape analysis to apply, so the budgets describe steady state.
+ * Skipped on JVMs without the counter.
+ */
+public class AllocationTest {
+  private static final int WARMUP = 20000;
+  private static final int ITERATIONS = 20000;
+  private static final int BATCH = 100;
+
+  private static com.sun.management.ThreadMXBean threads;
+
+  private ZSocket pull;
+  private ZSocket push;
+  private long sink;
+
+  private interface Operation {
+    void run(int i);
+  }
+
+  @BeforeClass
+  public static void checkSupport() {
+    final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+    threads = (com.sun.management.ThreadMXBean) bean;
+    Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+    threads.setThreadAllocatedMemoryEnabled(true);
+  }
+
+  @Before
+  public void connect() {
+    pull = new ZSocket(ZMQ_PULL);
+    push = new ZSocket(ZMQ_PUSH);
+  }
+
+  @After
+  public void close() {
+    push.close();
+    pull.close();
+  }
+
+  private static long allocated() {
+    return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  // Runs the operation in batches, so sends never block on the high water mark
+  private static double perOperation(final Operation operation, final Operation drain) {
+    for (int i = 0; i < WARMUP; i += BATCH) {
+      batch(operation, drain, i);
+    }
+    final long start = allocated();
+    for (int i = 0; i < ITERATIONS; i += BATCH) {
+      batch(operation, drain, i);
+    }
+    return (double) (allocated() - start) / ITERATIONS;
+  }
+
+  private static void batch(final Operation operation, final Operation drain, final int offset) {
+    for (int i = 0; i < BATCH; i++) {
+      operation.run(offset + i);
+    }
+    if (drain != null) {
+      for (int i = 0; i < BATCH; i++) {
+        drain.run(offset + i);
+      }
+    }
+  }
+
+  private static void assertBudget(final String name, final double perOperation, final int budget) {
+    assertTrue(name + " allocated " + perOperation + " bytes per operation, over " + budget,
+        perOperation <= budget);
+  }
+
+  @Test
+  public void testFrameAccessors() {
+    final ZFrame frame = new ZFrame(32);
+    assertBudget("ZFrame accessors", perOperation(new Operation() {
+      @Override
+      public void run(int i) {
+        frame.writeLong(0, i);
+        frame.writeInt(8, i);
+        frame.writeShort(12, (short) i);
+        frame.writeDouble(16, i);
+        frame.writeFloat(24, i);
+        sink += frame.getLong(0) + frame.getInt(8) + frame.getShort(12)
+            + (long) frame.getDouble(16) + (long) frame.getFloat(24) + frame.size();
+      }
+    }, null), 0);
+  }
+
+  @Test
+  public void testSendAndReceiveBytes() {
+    pull.bind("inproc://allocation-bytes");
+    push.connect("inproc://allocation-bytes");
+    final byte[] payload = new byte[64];
+    final Operation receive = new Operation() {
+      @Override
+      public void run(int i) {
+        sink += pull.receive().length;
+      }
+    };
+    assertBudget("send(byte[])", perOperation(new Operation() {
+      @Override
+      public void run(int i) {
+        push.send(payload);
+      }
+    }, receive), 128);
+  }
+
+  @Test
+  public void testSendFrameAndReceiveFrame() {
+    pull.bind("inproc://allocation-frame");
+    push.connect("inproc://allocation-frame");
+    final ZFrame frame = new ZFrame(64);
+    assertBudget("sendFrame", perOperation(new Operation() {
+      @Override
+      public void run(int i) {
+        push.sendFrame(frame, 0);
+      }
+    }, new Operation() {
+      @Override
+      public void run(int i) {
+        sink += pull.receiveFrame().size();
+      }
+    }), 256);
+  }
+
+  @Test
+  public void testSendMessage() {
+    pull.bind("inproc://allocation-message");
+    push.connect("inproc://allocation-message");
+    final ZFrame header = new ZFrame(8);
+    final ZFrame body = new ZFrame(64);
+    final ZMessage message = new ZMessage();
+    assertBudget("sendMessage", perOperation(new Operation() {
+      @Override
+      public void run(int i) {
+        message.add(header);
+        message.add(body);
+        push.sendMessage(message);
+      }
+    }, new Operation() {
+      @Override
+      public void run(int i) {
+        sink += pull.receiveMessage().size();
+      }
+    }), 640);
+  }
+
+  @Test
+  public void testStringHelpers() {
+    pull.bind("inproc://allocation-string");
+    push.connect("inproc://allocation-string");
+    assertBudget("sendStringUtf8", perOperation(new Operation() {
+      @Override
+      public void run(int i) {
+        push.sendStringUtf8("hello", i % 2 == 0 ? ZMQ_SNDMORE : 0);
+      }
+    }, new Operation() {
+      @Override
+      public void run(int i) {
+        sink += pull.receiveStringUtf8().length();
+      }
+    }), 256);
+  }
+
+  // Under a byte per operation leaves room for one-off allocations only, such as queue growth
+  @Test
+  public void testReceiveBatchIntoReusedFrames() {
+    pull.bind("jvm://allocation-batch");
+    push.connect("jvm://allocation-batch");
+    final ZFrame frame = new ZFrame(64);
+    final ZFrame[] frames = new ZFrame[BATCH];
+    assertBudget("jvm:// sendFrame and receiveBatch", perOperation(new Operation() {
+      @Override
+      public void run(int i) {
+        push.sendFrame(frame, 0);
+        if (i % BATCH == BATCH - 1) {
+          int received = 0;
+          while (received < BATCH) {
+            received += pull.receiveBatch(frames, BATCH - received, -1);
+          }
+        }
+      }
+    }, null), 1);
+  }
+}
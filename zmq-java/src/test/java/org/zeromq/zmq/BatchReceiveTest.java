@@ -0,0 +1,83 @@
+package org.zeromq.zmq;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.zeromq.zmq.ZMQ.ZMQ_PULL;
+import static org.zeromq.zmq.ZMQ.ZMQ_PUSH;
+import static org.zeromq.zmq.ZMQ.ZMQ_SNDMORE;
+
+import org.junit.Test;
+
+public class BatchReceiveTest {
+  private static String string(final ZFrame frame) {
+    return frame.getStringUtf8(0, frame.size());
+  }
+
+  @Test
+  public void testFramesAreFilledInPlace() throws Exception {
+    try (final ZSocket pull = new ZSocket(ZMQ_PULL);
+         final ZSocket push = new ZSocket(ZMQ_PUSH)) {
+      pull.bind("inproc://batch-frames");
+      push.connect("inproc://batch-frames");
+      for (int i = 0; i < 5; i++) {
+        push.sendStringUtf8(Integer.toString(i));
+      }
+      push.sendStringUtf8("head", ZMQ_SNDMORE);
+      push.sendStringUtf8("tail");
+
+      final ZFrame reused = new ZFrame();
+      final ZFrame[] frames = {reused, null, null, null, null, null, null, null};
+      assertEquals(4, pull.receiveBatch(frames, 4, 1000));
+      assertSame(reused, frames[0]);
+      assertEquals("0", string(frames[0]));
+      assertEquals("3", string(frames[3]));
+
+      assertEquals(3, pull.receiveBatch(frames, frames.length, 1000));
+      assertEquals("4", string(frames[0]));
+      assertEquals("head", string(frames[1]));
+      assertTrue(frames[1].hasMore());
+      assertEquals("tail", string(frames[2]));
+      assertFalse(frames[2].hasMore());
+    }
+  }
+
+  @Test
+  public void testMessagesReuseTheirFrames() throws Exception {
+    try (final ZSocket pull = new ZSocket(ZMQ_PULL);
+         final ZSocket push = new ZSocket(ZMQ_PUSH)) {
+      pull.bind("jvm://batch-messages");
+      push.connect("jvm://batch-messages");
+      push.sendStringUtf8("a", ZMQ_SNDMORE);
+      push.sendStringUtf8("b");
+      push.sendStringUtf8("c");
+
+      final ZMessage[] messages = new ZMessage[4];
+      assertEquals(2, pull.receiveBatch(messages, messages.length, 1000));
+      assertEquals(2, messages[0].size());
+      assertEquals(1, messages[1].size());
+
+      final ZFrame first = messages[0].peek();
+      push.sendStringUtf8("d");
+      assertEquals(1, pull.receiveBatch(messages, messages.length, 1000));
+      assertEquals(1, messages[0].size());
+      assertSame(first, messages[0].peek());
+      assertEquals("d", string(messages[0].peek()));
+      // Nothing was received into the second message, so it keeps its frame
+      assertEquals(1, messages[1].size());
+      assertEquals("c", string(messages[1].peek()));
+    }
+  }
+
+  @Test
+  public void testTimeoutWithNothingQueued() throws Exception {
+    try (final ZSocket pull = new ZSocket(ZMQ_PULL)) {
+      pull.bind("inproc://batch-timeout");
+      final long start = System.nanoTime();
+      assertEquals(0, pull.receiveBatch(new ZFrame[8], 8, 50));
+      assertTrue(System.nanoTime() - start >= 40000000L);
+      assertEquals(0, pull.receiveBatch(new ZMessage[8], 8, 0));
+    }
+  }
+}
@@ -0,0 +1,96 @@
+package org.zeromq.zmq;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.zeromq.zmq.ZMQ.ZMQ_DEALER;
+import static org.zeromq.zmq.ZMQ.ZMQ_PULL;
+import static org.zeromq.zmq.ZMQ.ZMQ_PUSH;
+import static org.zeromq.zmq.ZMQ.ZMQ_ROUTER;
+import static org.zeromq.zmq.ZMQ.ZMQ_SNDMORE;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+import org.zeromq.ZMQException;
+
+public class ChecksumTest {
+  @Test
+  public void testKnownValue() {
+    // The check value of CRC-32C
+    final ByteBuffer buffer = ByteBuffer.wrap("123456789".getBytes(ZSocket.UTF8));
+    assertEquals(0xe3069283, ZChecksum.crc32c(buffer));
+    assertEquals(0, buffer.position());
+    assertEquals(0xe3069283, ZChecksum.compute(null, buffer, buffer.remaining()));
+  }
+
+  @Test
+  public void testTrailerIsStrippedOnReceive() {
+    try (final ZSocket pull = new ZSocket(ZMQ_PULL);
+         final ZSocket push = new ZSocket(ZMQ_PUSH)) {
+      pull.enableChecksums(ZChecksum.Policy.RAISE);
+      push.enableChecksums(ZChecksum.Policy.RAISE);
+      pull.bind("inproc://checksum-strip");
+      push.connect("inproc://checksum-strip");
+
+      push.sendStringUtf8("hello", ZMQ_SNDMORE);
+      push.send(new byte[] {1, 2, 3});
+      assertEquals("hello", pull.receiveStringUtf8());
+      assertArrayEquals(new byte[] {1, 2, 3}, pull.receive());
+      assertEquals(0, pull.checksumFailures());
+    }
+  }
+
+  @Test
+  public void testRouterIdentityIsNotSealed() {
+    try (final ZSocket router = new ZSocket(ZMQ_ROUTER);
+         final ZSocket dealer = new ZSocket(ZMQ_DEALER)) {
+      router.enableChecksums(ZChecksum.Policy.RAISE);
+      dealer.enableChecksums(ZChecksum.Policy.RAISE);
+      router.bind("inproc://checksum-router");
+      dealer.connect("inproc://checksum-router");
+
+      dealer.sendStringUtf8("", ZMQ_SNDMORE);
+      dealer.sendStringUtf8("request");
+      final ZMessage request = router.receiveMessage();
+      assertEquals(3, request.size());
+      final ZFrame identity = request.pop();
+      assertEquals(0, request.pop().size());
+      assertEquals("request", new String(request.pop().data(), ZSocket.UTF8));
+
+      // The identity must reach the engine as received, or the reply cannot be routed
+      router.sendFrame(identity, ZMQ_SNDMORE);
+      router.sendStringUtf8("", ZMQ_SNDMORE);
+      router.sendStringUtf8("reply");
+      assertEquals("", dealer.receiveStringUtf8());
+      assertEquals("reply", dealer.receiveStringUtf8());
+      assertEquals(0, router.checksumFailures());
+      assertEquals(0, dealer.checksumFailures());
+    }
+  }
+
+  @Test
+  public void testMismatchIsRaisedOrCounted() {
+    try (final ZSocket pull = new ZSocket(ZMQ_PULL);
+         final ZSocket push = new ZSocket(ZMQ_PUSH)) {
+      pull.enableChecksums(ZChecksum.Policy.RAISE);
+      pull.bind("inproc://checksum-mismatch");
+      push.connect("inproc://checksum-mismatch");
+
+      push.send(new byte[] {1, 2, 3, 4, 5, 6});
+      try {
+        pull.receive();
+        fail("expected a checksum mismatch");
+      } catch (ZMQException e) {
+        assertEquals(1, pull.checksumFailures());
+      }
+
+      pull.enableChecksums(ZChecksum.Policy.COUNT);
+      final byte[] corrupt = "payload____".getBytes(ZSocket.UTF8);
+      ByteBuffer.wrap(corrupt).putInt(7, ZChecksum.crc32c(ByteBuffer.wrap(corrupt, 0, 7)) ^ 1);
+      push.send(corrupt);
+      assertEquals("payload", pull.receiveStringUtf8());
+      assertEquals(1, pull.checksumFailures());
+    }
+  }
+}
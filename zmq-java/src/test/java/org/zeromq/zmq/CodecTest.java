@@ -0,0 +1,87 @@
+package org.zeromq.zmq;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.zeromq.zmq.ZMQ.ZMQ_PULL;
+import static org.zeromq.zmq.ZMQ.ZMQ_PUSH;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class CodecTest {
+  static class Order {
+    private final long id;
+    private final int quantity;
+    private final double price;
+    private final String symbol;
+    private final byte[] tag;
+    private transient int cached;
+
+    private Order() {
+      this(0, 0, 0, null, null);
+    }
+
+    Order(long id, int quantity, double price, String symbol, byte[] tag) {
+      this.id = id;
+      this.quantity = quantity;
+      this.price = price;
+      this.symbol = symbol;
+      this.tag = tag;
+      this.cached = 1;
+    }
+  }
+
+  @Test
+  public void testBundledCodecs() {
+    try (final ZSocket pull = new ZSocket(ZMQ_PULL); final ZSocket push = new ZSocket(ZMQ_PUSH)) {
+      pull.bind("inproc://codec-bundled");
+      push.connect("inproc://codec-bundled");
+      push.sendObject(42L);
+      push.sendObject(-7);
+      push.sendObject(2.5d);
+      push.sendObject(true);
+      push.sendObject("héllo € 😀");
+      push.sendObject(new byte[] {1, 2, 3});
+      assertEquals(Long.valueOf(42L), pull.receiveObject(Long.class));
+      assertEquals(Integer.valueOf(-7), pull.receiveObject(Integer.class));
+      assertEquals(Double.valueOf(2.5d), pull.receiveObject(Double.class));
+      assertTrue(pull.receiveObject(Boolean.class));
+      assertEquals("héllo € 😀", pull.receiveObject(String.class));
+      assertArrayEquals(new byte[] {1, 2, 3}, pull.receiveObject(byte[].class));
+      assertNull(pull.receiveObject(ZCodecs.BYTES, ZMQ.ZMQ_DONTWAIT));
+    }
+  }
+
+  @Test
+  public void testStringMatchesGetBytes() {
+    final String s = "aÿࠀ\ud800x😀";
+    final ByteBuffer bb = ByteBuffer.allocate(ZCodecs.STRING.size(s));
+    ZCodecs.STRING.encode(s, bb);
+    assertArrayEquals(s.getBytes(ZSocket.UTF8), bb.array());
+  }
+
+  @Test
+  public void testFieldCodec() {
+    ZCodecs.register(Order.class, ZCodecs.fields(Order.class));
+    try (final ZSocket pull = new ZSocket(ZMQ_PULL); final ZSocket push = new ZSocket(ZMQ_PUSH)) {
+      pull.bind("jvm://codec-fields");
+      push.connect("jvm://codec-fields");
+      push.sendObject(new Order(-1L << 40, 300, 99.5, "ZMQ", new byte[] {9}));
+      push.sendObject(new Order(1, -1, 0, null, null));
+      final Order first = pull.receiveObject(Order.class);
+      assertEquals(-1L << 40, first.id);
+      assertEquals(300, first.quantity);
+      assertEquals(99.5, first.price, 0);
+      assertEquals("ZMQ", first.symbol);
+      assertArrayEquals(new byte[] {9}, first.tag);
+      assertEquals(1, first.cached);
+      final Order second = pull.receiveObject(Order.class);
+      assertEquals(-1, second.quantity);
+      assertNull(second.symbol);
+      assertNull(second.tag);
+    }
+  }
+}
@@ -0,0 +1,95 @@
+package org.zeromq.zmq;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.zeromq.zmq.ZMQ.ZMQ_PAIR;
+import static org.zeromq.zmq.ZMQ.ZMQ_PULL;
+import static org.zeromq.zmq.ZMQ.ZMQ_PUSH;
+import static org.zeromq.zmq.ZMQ.ZMQ_SNDMORE;
+
+import org.junit.Test;
+
+public class FlowControlTest {
+  @Test
+  public void testTokenBucketLimitsBurst() {
+    final ZTokenBucket bucket = new ZTokenBucket(1, 0, 3, 0);
+    assertTrue(bucket.tryAcquire(1, 100));
+    assertTrue(bucket.tryAcquire(1, 100));
+    assertTrue(bucket.tryAcquire(1, 100));
+    assertFalse(bucket.tryAcquire(1, 100));
+    // Frames that do not complete a message are not counted against the message rate
+    assertTrue(bucket.tryAcquire(0, 100));
+  }
+
+  @Test
+  public void testTokenBucketLimitsBytes() {
+    final ZTokenBucket bucket = new ZTokenBucket(0, 1000, 0, 1000);
+    assertTrue(bucket.tryAcquire(1, 600));
+    assertFalse(bucket.tryAcquire(1, 600));
+  }
+
+  @Test
+  public void testFailFastSocketSend() {
+    try (final ZSocket pull = new ZSocket(ZMQ_PULL);
+         final ZSocket push = new ZSocket(ZMQ_PUSH)) {
+      pull.bind("inproc://flow-fail-fast");
+      push.connect("inproc://flow-fail-fast");
+      push.setFlowControl(new ZTokenBucket(1, 0, 1, 0), ZFlowControl.Policy.FAIL_FAST);
+
+      assertEquals(5, push.sendStringUtf8("first"));
+      assertEquals(-1, push.sendStringUtf8("second"));
+      assertEquals("first", pull.receiveStringUtf8());
+    }
+  }
+
+  @Test
+  public void testMessageIsAdmittedWhole() {
+    try (final ZSocket pull = new ZSocket(ZMQ_PULL);
+         final ZSocket push = new ZSocket(ZMQ_PUSH)) {
+      pull.bind("inproc://flow-whole-message");
+      push.connect("inproc://flow-whole-message");
+      final ZTokenBucket bucket = new ZTokenBucket(0, 1, 0, 10);
+      push.setFlowControl(bucket, ZFlowControl.Policy.FAIL_FAST);
+
+      // The budget runs out on the second frame, but the message was admitted on its first
+      assertEquals(6, push.sendStringUtf8("header", ZMQ_SNDMORE));
+      assertEquals(6, push.sendStringUtf8("body-1", ZMQ_SNDMORE));
+      assertEquals(6, push.sendStringUtf8("body-2"));
+      final ZMessage message = pull.receiveMessage();
+      assertEquals(3, message.size());
+      message.pop();
+      message.pop();
+      final ZFrame last = message.pop();
+      assertEquals("body-2", last.getStringUtf8(0, last.size()));
+
+      // The frames sent on credit are paid back before the next message
+      assertEquals(-1, push.sendStringUtf8("next"));
+      assertFalse(bucket.tryAcquire(1, 1));
+    }
+  }
+
+  @Test
+  public void testCreditGrantedOverSideChannel() {
+    try (final ZSocket pull = new ZSocket(ZMQ_PULL);
+         final ZSocket push = new ZSocket(ZMQ_PUSH);
+         final ZSocket granter = new ZSocket(ZMQ_PAIR);
+         final ZSocket credits = new ZSocket(ZMQ_PAIR)) {
+      pull.bind("inproc://flow-credit");
+      push.connect("inproc://flow-credit");
+      credits.bind("inproc://flow-credit-channel");
+      granter.connect("inproc://flow-credit-channel");
+      final ZCreditFlowControl flow = new ZCreditFlowControl(credits);
+      push.setFlowControl(flow, ZFlowControl.Policy.FAIL_FAST);
+
+      assertEquals(-1, push.sendStringUtf8("no credit"));
+      assertTrue(ZCreditFlowControl.grant(granter, 2, 1024));
+      assertEquals(1, push.sendStringUtf8("a"));
+      assertEquals(1, push.sendStringUtf8("b"));
+      assertEquals(-1, push.sendStringUtf8("c"));
+      assertEquals("a", pull.receiveStringUtf8());
+      assertEquals("b", pull.receiveStringUtf8());
+      assertEquals(1022, flow.byteCredit());
+    }
+  }
+}
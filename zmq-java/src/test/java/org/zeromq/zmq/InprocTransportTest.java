@@ -0,0 +1,126 @@
+package org.zeromq.zmq;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.zeromq.zmq.ZMQ.ZMQ_DONTWAIT;
+import static org.zeromq.zmq.ZMQ.ZMQ_PAIR;
+import static org.zeromq.zmq.ZMQ.ZMQ_PUB;
+import static org.zeromq.zmq.ZMQ.ZMQ_PULL;
+import static org.zeromq.zmq.ZMQ.ZMQ_PUSH;
+import static org.zeromq.zmq.ZMQ.ZMQ_SNDMORE;
+import static org.zeromq.zmq.ZMQ.ZMQ_SUB;
+
+import org.junit.Test;
+
+public class InprocTransportTest {
+  @Test
+  public void testPushPullHandsOverFrame() {
+    try (final ZSocket pull = new ZSocket(ZMQ_PULL);
+         final ZSocket push = new ZSocket(ZMQ_PUSH)) {
+      pull.bind("jvm://push-pull");
+      push.connect("jvm://push-pull");
+
+      final ZFrame frame = new ZFrame(8).writeLong(0, 42L);
+      assertTrue(push.sendFrame(frame, 0));
+      final ZFrame received = pull.receiveFrame();
+
+      assertSame(frame, received);
+      assertEquals(42L, received.getLong(0));
+      assertNull(pull.receiveFrame(ZMQ_DONTWAIT));
+    }
+  }
+
+  @Test
+  public void testMultipartMessage() {
+    try (final ZSocket pull = new ZSocket(ZMQ_PULL);
+         final ZSocket push = new ZSocket(ZMQ_PUSH)) {
+      push.bind("jvm://multipart");
+      pull.connect("jvm://multipart");
+
+      final ZMessage message = new ZMessage();
+      message.add(new ZFrame(4).writeInt(0, 1));
+      message.add(new ZFrame(4).writeInt(0, 2));
+      assertTrue(push.sendMessage(message));
+
+      final ZMessage received = pull.receiveMessage();
+      assertEquals(2, received.size());
+      final ZFrame first = received.pop();
+      assertTrue(first.hasMore());
+      assertEquals(1, first.getInt(0));
+      final ZFrame second = received.pop();
+      assertFalse(second.hasMore());
+      assertEquals(2, second.getInt(0));
+    }
+  }
+
+  @Test
+  public void testPubSubFiltersByTopic() {
+    try (final ZSocket pub = new ZSocket(ZMQ_PUB);
+         final ZSocket sub = new ZSocket(ZMQ_SUB)) {
+      sub.subscribe("a".getBytes(ZSocket.UTF8));
+      pub.bind("jvm://pub-sub");
+      sub.connect("jvm://pub-sub");
+
+      pub.sendStringUtf8("b-ignored");
+      pub.sendStringUtf8("a-delivered");
+
+      assertEquals("a-delivered", sub.receiveStringUtf8());
+      assertNull(sub.receive(ZMQ_DONTWAIT));
+    }
+  }
+
+  @Test
+  public void testPairIsBidirectional() {
+    try (final ZSocket left = new ZSocket(ZMQ_PAIR);
+         final ZSocket right = new ZSocket(ZMQ_PAIR)) {
+      left.bind("jvm://pair");
+      right.connect("jvm://pair");
+
+      left.sendStringUtf8("ping");
+      assertEquals("ping", right.receiveStringUtf8());
+      right.sendStringUtf8("pong");
+      assertEquals("pong", left.receiveStringUtf8());
+    }
+  }
+
+  @Test
+  public void testSendWithoutRoomFailsWhenNotBlocking() {
+    try (final ZSocket push = new ZSocket(ZMQ_PUSH)) {
+      push.bind("jvm://full");
+      int sent = 0;
+      while (push.send(new byte[1], ZMQ_DONTWAIT) == 1) {
+        sent++;
+      }
+      assertEquals(InprocTransport.DEFAULT_CAPACITY, sent);
+    }
+  }
+
+  @Test
+  public void testRefusedLastFrameCanBeRetried() {
+    try (final ZSocket pull = new ZSocket(ZMQ_PULL);
+         final ZSocket push = new ZSocket(ZMQ_PUSH)) {
+      push.bind("jvm://retry");
+      pull.connect("jvm://retry");
+      for (int i = 0; i < InprocTransport.DEFAULT_CAPACITY; i++) {
+        assertTrue(push.sendFrame(new ZFrame(4).writeInt(0, i), ZMQ_DONTWAIT));
+      }
+      final ZFrame head = new ZFrame(4).writeInt(0, -1);
+      final ZFrame tail = new ZFrame(4).writeInt(0, -2);
+      assertTrue(push.sendFrame(head, ZMQ_SNDMORE));
+      assertFalse(push.sendFrame(tail, ZMQ_DONTWAIT));
+
+      assertEquals(0, pull.receiveFrame().getInt(0));
+      assertTrue(push.sendFrame(tail, ZMQ_DONTWAIT));
+      for (int i = 1; i < InprocTransport.DEFAULT_CAPACITY; i++) {
+        assertEquals(i, pull.receiveFrame().getInt(0));
+      }
+      final ZMessage message = pull.receiveMessage();
+      assertEquals(2, message.size());
+      assertSame(head, message.pop());
+      assertSame(tail, message.pop());
+    }
+  }
+}
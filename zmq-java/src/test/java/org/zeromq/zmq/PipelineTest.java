@@ -0,0 +1,123 @@
+package org.zeromq.zmq;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class PipelineTest {
+  private static ZMessage number(final int n) {
+    final ZMessage message = new ZMessage();
+    message.add(new ZFrame(4).writeInt(0, n));
+    return message;
+  }
+
+  @Test
+  public void testStagesRunToCompletion() throws Exception {
+    final AtomicInteger produced = new AtomicInteger();
+    final AtomicLong sum = new AtomicLong();
+    final AtomicInteger count = new AtomicInteger();
+    try (final ZPipeline pipeline = ZPipeline.builder()
+        .source("numbers", new ZPipeline.Source() {
+          @Override
+          public ZMessage next() {
+            final int n = produced.incrementAndGet();
+            return n <= 10000 ? number(n) : null;
+          }
+        })
+        .transform("square", new ZPipeline.Transform() {
+          @Override
+          public ZMessage apply(ZMessage message) {
+            final int n = message.peek().getInt(0);
+            return number(n * n % 1000);
+          }
+        }).threads(4).batchSize(16)
+        .transform("odd", new ZPipeline.Transform() {
+          @Override
+          public ZMessage apply(ZMessage message) {
+            return message.peek().getInt(0) % 2 == 1 ? message : null;
+          }
+        }).cheap()
+        .sink("sum", new ZPipeline.Sink() {
+          @Override
+          public void accept(ZMessage message) {
+            sum.addAndGet(message.peek().getInt(0));
+            count.incrementAndGet();
+          }
+        })
+        .build()) {
+      pipeline.start();
+      assertTrue(pipeline.await(10000));
+
+      long expectedSum = 0;
+      int expectedCount = 0;
+      for (int n = 1; n <= 10000; n++) {
+        final int squared = n * n % 1000;
+        if (squared % 2 == 1) {
+          expectedSum += squared;
+          expectedCount++;
+        }
+      }
+      assertEquals(expectedSum, sum.get());
+      assertEquals(expectedCount, count.get());
+
+      final List<ZPipeline.Metrics> metrics = pipeline.metrics();
+      assertEquals(4, metrics.size());
+      assertEquals(10000, metrics.get(0).processed());
+      assertEquals(10000, metrics.get(1).processed());
+      assertEquals(4, metrics.get(1).threads());
+      assertTrue(metrics.get(2).isFused());
+      assertFalse(metrics.get(3).isFused());
+      assertEquals(expectedCount, metrics.get(3).processed());
+      assertEquals(0, metrics.get(3).queueDepth());
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void testFailingStageStopsThePipeline() throws Exception {
+    final IllegalArgumentException thrown = new IllegalArgumentException("bad message");
+    final AtomicInteger accepted = new AtomicInteger();
+    final ZPipeline pipeline = ZPipeline.builder()
+        // Never exhausted, so the stages before the failure fill their queues and must be stopped
+        .source("forever", new ZPipeline.Source() {
+          @Override
+          public ZMessage next() {
+            return number(1);
+          }
+        })
+        .transform("pass", new ZPipeline.Transform() {
+          @Override
+          public ZMessage apply(ZMessage message) {
+            return message;
+          }
+        })
+        .sink("picky", new ZPipeline.Sink() {
+          @Override
+          public void accept(ZMessage message) {
+            if (accepted.incrementAndGet() == 5000) {
+              throw thrown;
+            }
+          }
+        })
+        .build();
+    try {
+      pipeline.start();
+      pipeline.await(10000);
+      fail("expected the sink's exception");
+    } catch (IllegalStateException e) {
+      assertSame(thrown, e.getCause());
+      assertTrue(e.getMessage().contains("picky"));
+    }
+    assertSame(thrown, pipeline.failure());
+    // Already reported by await, so closing succeeds once every thread has ended
+    pipeline.close();
+    assertEquals(5000, accepted.get());
+  }
+}
@@ -0,0 +1,79 @@
+package org.zeromq.zmq;
+
+import static org.junit.Assert.assertEquals;
+import static org.zeromq.zmq.ZMQ.ZMQ_PULL;
+import static org.zeromq.zmq.ZMQ.ZMQ_PUSH;
+import static org.zeromq.zmq.ZMQ.ZMQ_SNDMORE;
+
+import org.junit.Test;
+
+public class PriorityReceiverTest {
+  @Test
+  public void testStrictServesControlFirst() {
+    try (final ZSocket control = new ZSocket(ZMQ_PULL);
+         final ZSocket bulk = new ZSocket(ZMQ_PULL);
+         final ZSocket controlSender = new ZSocket(ZMQ_PUSH);
+         final ZSocket bulkSender = new ZSocket(ZMQ_PUSH)) {
+      control.bind("inproc://priority-strict-control");
+      bulk.bind("jvm://priority-strict-bulk");
+      controlSender.connect("inproc://priority-strict-control");
+      bulkSender.connect("jvm://priority-strict-bulk");
+      final ZPriorityReceiver receiver = new ZPriorityReceiver(ZPriorityReceiver.Policy.STRICT);
+      assertEquals(0, receiver.addLane(control, 1));
+      assertEquals(1, receiver.addLane(bulk, 1));
+
+      for (int i = 0; i < 10; i++) {
+        bulkSender.sendStringUtf8("bulk");
+      }
+      controlSender.sendStringUtf8("cancel", ZMQ_SNDMORE);
+      controlSender.sendStringUtf8("42");
+      controlSender.sendStringUtf8("amend");
+
+      final ZMessage message = new ZMessage();
+      assertEquals(0, receiver.receive(message, 1000));
+      assertEquals(2, message.size());
+      assertEquals(0, receiver.receive(message, 1000));
+      assertEquals(1, message.size());
+      for (int i = 0; i < 10; i++) {
+        assertEquals(1, receiver.receive(message, 1000));
+      }
+      assertEquals(-1, receiver.receive(message, 10));
+      assertEquals(2, receiver.received(0));
+      assertEquals(10, receiver.received(1));
+    }
+  }
+
+  @Test
+  public void testWeightedSharesByWeight() {
+    try (final ZSocket high = new ZSocket(ZMQ_PULL);
+         final ZSocket low = new ZSocket(ZMQ_PULL);
+         final ZSocket highSender = new ZSocket(ZMQ_PUSH);
+         final ZSocket lowSender = new ZSocket(ZMQ_PUSH)) {
+      high.bind("inproc://priority-weighted-high");
+      low.bind("inproc://priority-weighted-low");
+      highSender.connect("inproc://priority-weighted-high");
+      lowSender.connect("inproc://priority-weighted-low");
+      final ZPriorityReceiver receiver = new ZPriorityReceiver(ZPriorityReceiver.Policy.WEIGHTED);
+      receiver.addLane(high, 3);
+      receiver.addLane(low, 1);
+
+      for (int i = 0; i < 20; i++) {
+        highSender.sendStringUtf8("high");
+        lowSender.sendStringUtf8("low");
+      }
+      final ZMessage message = new ZMessage();
+      for (int i = 0; i < 16; i++) {
+        receiver.receive(message, 1000);
+      }
+      assertEquals(12, receiver.received(0));
+      assertEquals(4, receiver.received(1));
+
+      // Once the high lane is drained the low lane gets every turn
+      for (int i = 0; i < 24; i++) {
+        receiver.receive(message, 1000);
+      }
+      assertEquals(20, receiver.received(0));
+      assertEquals(20, receiver.received(1));
+    }
+  }
+}
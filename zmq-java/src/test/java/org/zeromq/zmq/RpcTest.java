@@ -0,0 +1,163 @@
+package org.zeromq.zmq;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Test;
+import org.zeromq.ZMQException;
+
+import zmq.ZError;
+
+public class RpcTest {
+  private static ZMessage message(final long value) {
+    final ZMessage message = new ZMessage();
+    message.add(new ZFrame(8).writeLong(0, value));
+    return message;
+  }
+
+  @Test
+  public void testManyRequestsInFlight() throws Exception {
+    final ZRpcServer.Handler doubler = new ZRpcServer.Handler() {
+      @Override
+      public ZMessage handle(ZMessage request) {
+        return message(request.pop().getLong(0) * 2);
+      }
+    };
+    try (final ZRpcServer server = new ZRpcServer("tcp://127.0.0.1:7220", doubler, 4);
+         final ZRpcClient client = new ZRpcClient("tcp://127.0.0.1:7220")) {
+      final List<Future<ZMessage>> replies = new ArrayList<Future<ZMessage>>();
+      for (int i = 0; i < 1000; i++) {
+        replies.add(client.call(message(i), 5000));
+      }
+      for (int i = 0; i < replies.size(); i++) {
+        assertEquals(i * 2L, replies.get(i).get().pop().getLong(0));
+      }
+    }
+  }
+
+  @Test
+  public void testOutOfOrderRepliesAndDeadline() throws Exception {
+    final ZRpcServer.Handler sleeper = new ZRpcServer.Handler() {
+      @Override
+      public ZMessage handle(ZMessage request) {
+        final long millis = request.pop().getLong(0);
+        try {
+          Thread.sleep(millis);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        return message(millis);
+      }
+    };
+    try (final ZRpcServer server = new ZRpcServer("tcp://127.0.0.1:7221", sleeper, 2);
+         final ZRpcClient client = new ZRpcClient("tcp://127.0.0.1:7221")) {
+      final Future<ZMessage> slow = client.call(message(300), 50);
+      final Future<ZMessage> fast = client.call(message(0), 5000);
+
+      assertEquals(0L, fast.get().pop().getLong(0));
+      try {
+        slow.get();
+        fail("expected the slow request to time out");
+      } catch (ExecutionException e) {
+        assertTrue(e.getCause() instanceof TimeoutException);
+      }
+    }
+  }
+
+  @Test
+  public void testHandlerFailureIsReplied() throws Exception {
+    final ZRpcServer.Handler picky = new ZRpcServer.Handler() {
+      @Override
+      public ZMessage handle(ZMessage request) {
+        final long value = request.pop().getLong(0);
+        if (value < 0) {
+          throw new IllegalArgumentException("negative " + value);
+        }
+        return message(value);
+      }
+    };
+    try (final ZRpcServer server = new ZRpcServer("tcp://127.0.0.1:7222", picky);
+         final ZRpcClient client = new ZRpcClient("tcp://127.0.0.1:7222")) {
+      try {
+        client.call(message(-1), 5000).get();
+        fail("expected the handler's exception");
+      } catch (ExecutionException e) {
+        assertTrue(e.getCause() instanceof ZMQException);
+        assertTrue(e.getCause().getMessage().contains("negative -1"));
+      }
+      // The worker survived the exception
+      assertEquals(7L, client.call(message(7), 5000).get().pop().getLong(0));
+      assertEquals(0, client.inFlight());
+    }
+  }
+
+  @Test
+  public void testCancelledCallLeavesInFlight() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    final ZRpcServer.Handler blocker = new ZRpcServer.Handler() {
+      @Override
+      public ZMessage handle(ZMessage request) {
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        return request;
+      }
+    };
+    try (final ZRpcServer server = new ZRpcServer("tcp://127.0.0.1:7223", blocker);
+         final ZRpcClient client = new ZRpcClient("tcp://127.0.0.1:7223")) {
+      final Future<ZMessage> call = client.call(message(1), -1);
+      while (client.inFlight() == 0) {
+        Thread.sleep(1);
+      }
+      assertTrue(call.cancel(false));
+      assertTrue(call.isCancelled());
+      assertEquals(0, client.inFlight());
+      release.countDown();
+    }
+  }
+
+  @Test
+  public void testCallsRacingCloseAllComplete() throws Exception {
+    for (int round = 0; round < 20; round++) {
+      final ZRpcClient client = new ZRpcClient("tcp://127.0.0.1:7224");
+      final List<Future<ZMessage>> calls = new ArrayList<Future<ZMessage>>();
+      final CountDownLatch calling = new CountDownLatch(1);
+      final Thread caller = new Thread() {
+        @Override
+        public void run() {
+          try {
+            for (int i = 0; i < 500; i++) {
+              calls.add(client.call(message(0), -1));
+              calling.countDown();
+            }
+          } catch (ZMQException e) {
+            calling.countDown();
+          }
+        }
+      };
+      caller.start();
+      calling.await();
+      client.close();
+      caller.join();
+      for (Future<ZMessage> call : calls) {
+        try {
+          call.get(1, TimeUnit.SECONDS);
+          fail("call completed without a server");
+        } catch (ExecutionException e) {
+          assertEquals(ZError.ETERM, ((ZMQException) e.getCause()).getErrorCode());
+        }
+      }
+    }
+  }
+}
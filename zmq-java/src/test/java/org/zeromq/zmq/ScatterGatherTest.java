@@ -0,0 +1,89 @@
+package org.zeromq.zmq;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ScatterGatherTest {
+  private static ZRpcServer shard(final int port, final long delayMillis) {
+    return new ZRpcServer("tcp://127.0.0.1:" + port, new ZRpcServer.Handler() {
+      @Override
+      public ZMessage handle(ZMessage request) {
+        try {
+          Thread.sleep(delayMillis);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        final ZMessage reply = new ZMessage();
+        reply.add(new ZFrame(4).writeInt(0, port));
+        return reply;
+      }
+    });
+  }
+
+  private static ZMessage request() {
+    final ZMessage request = new ZMessage();
+    request.add(new ZFrame(4).writeInt(0, 1));
+    return request;
+  }
+
+  @Test
+  public void testGathersAllReplies() {
+    try (final ZRpcServer a = shard(7230, 0);
+         final ZRpcServer b = shard(7231, 0);
+         final ZScatterGather sg = new ZScatterGather("tcp://127.0.0.1:7230",
+             "tcp://127.0.0.1:7231")) {
+      final ZScatterGather.Result result = sg.scatter(request(), 5000);
+      assertTrue(result.isComplete());
+      assertEquals(7230, result.reply(0).pop().getInt(0));
+      assertEquals(7231, result.reply(1).pop().getInt(0));
+      assertTrue(result.latencyNanos(1) >= 0);
+    }
+  }
+
+  @Test
+  public void testFailedShardEndsTheRoundEarly() {
+    final ZRpcServer.Handler failing = new ZRpcServer.Handler() {
+      @Override
+      public ZMessage handle(ZMessage request) {
+        throw new IllegalStateException("shard down");
+      }
+    };
+    try (final ZRpcServer ok = shard(7234, 0);
+         final ZRpcServer broken = new ZRpcServer("tcp://127.0.0.1:7235", failing);
+         final ZScatterGather sg = new ZScatterGather("tcp://127.0.0.1:7234",
+             "tcp://127.0.0.1:7235")) {
+      final long start = System.nanoTime();
+      final ZScatterGather.Result result = sg.scatter(request(), 5000);
+      // The quorum of two cannot be reached once the broken shard has answered
+      assertTrue(System.nanoTime() - start < 2000000000L);
+      assertFalse(result.hasQuorum());
+      assertEquals(1, result.failed());
+      assertFalse(result.failed(0));
+      assertTrue(result.failed(1));
+      assertTrue(result.error(1).contains("shard down"));
+      assertNull(result.reply(1));
+      assertTrue(result.latencyNanos(1) >= 0);
+    }
+  }
+
+  @Test
+  public void testQuorumAndDeadlineReturnPartialResults() {
+    try (final ZRpcServer fast = shard(7232, 0);
+         final ZRpcServer slow = shard(7233, 500);
+         final ZScatterGather sg = new ZScatterGather("tcp://127.0.0.1:7232",
+             "tcp://127.0.0.1:7233")) {
+      final ZScatterGather.Result quorum = sg.scatter(request(), 1, 5000);
+      assertTrue(quorum.hasQuorum());
+      assertEquals(1, quorum.received());
+
+      final ZScatterGather.Result partial = sg.scatter(request(), 100);
+      assertFalse(partial.isComplete());
+      assertNull(partial.reply(1));
+      assertEquals(-1, partial.latencyNanos(1));
+    }
+  }
+}
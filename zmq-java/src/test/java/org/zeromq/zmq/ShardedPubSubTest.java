@@ -0,0 +1,120 @@
+package org.zeromq.zmq;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class ShardedPubSubTest {
+  private static final String[] ENDPOINTS =
+      {"tcp://127.0.0.1:7250", "tcp://127.0.0.1:7251", "tcp://127.0.0.1:7252"};
+  private static final String[] PREFIX_ENDPOINTS =
+      {"tcp://127.0.0.1:7253", "tcp://127.0.0.1:7254", "tcp://127.0.0.1:7255"};
+
+  private static byte[] bytes(final String s) {
+    return s.getBytes(ZSocket.UTF8);
+  }
+
+  private static String string(final ZFrame frame) {
+    return frame.getStringUtf8(0, frame.size());
+  }
+
+  private static String topicOn(final int shard, final String prefix) {
+    for (int i = 0;; i++) {
+      final String topic = prefix + i;
+      if (ZShardedPublisher.shard(bytes(topic), ENDPOINTS.length) == shard) {
+        return topic;
+      }
+    }
+  }
+
+  @Test
+  public void testExactTopicsKeepTheirOrderAcrossShards() throws Exception {
+    final String a = topicOn(0, "A");
+    final String b = topicOn(1, "B");
+    try (final ZShardedPublisher pub = new ZShardedPublisher(ENDPOINTS);
+         final ZShardedSubscriber sub = new ZShardedSubscriber(ENDPOINTS)) {
+      sub.subscribe(bytes(a));
+      sub.subscribe(bytes(b));
+      Thread.sleep(200);
+
+      for (int i = 0; i < 100; i++) {
+        pub.send(bytes(a), bytes(Integer.toString(i)));
+        pub.send(bytes(b), bytes(Integer.toString(i)));
+        // Matched by the native prefix subscription to a, but not wanted
+        pub.send(bytes(a + "x"), bytes("unwanted"));
+      }
+      int nextA = 0;
+      int nextB = 0;
+      while (nextA < 100 || nextB < 100) {
+        final ZMessage message = sub.receiveMessage(5000);
+        final String topic = string(message.pop());
+        final int seq = Integer.parseInt(string(message.pop()));
+        assertEquals(topic.equals(a) ? nextA++ : nextB++, seq);
+        assertNotEquals(a + "x", topic);
+      }
+      assertNull(sub.receiveMessage(100));
+    }
+  }
+
+  @Test
+  public void testPrefixSubscriptionsReachEveryShard() throws Exception {
+    try (final ZShardedPublisher pub = new ZShardedPublisher(PREFIX_ENDPOINTS);
+         final ZShardedSubscriber sub = new ZShardedSubscriber(PREFIX_ENDPOINTS)) {
+      sub.subscribePrefix(bytes("tick."));
+      Thread.sleep(200);
+
+      final Set<String> expected = new HashSet<String>();
+      for (int shard = 0; shard < ENDPOINTS.length; shard++) {
+        expected.add(topicOn(shard, "tick."));
+      }
+      pub.send(bytes("other"), bytes("x"));
+      for (String topic : expected) {
+        pub.send(bytes(topic), bytes("x"));
+      }
+      final Set<String> received = new HashSet<String>();
+      for (int i = 0; i < expected.size(); i++) {
+        received.add(string(sub.receiveMessage(5000).pop()));
+      }
+      assertEquals(expected, received);
+      assertNull(sub.receiveMessage(100));
+    }
+  }
+
+  @Test(timeout = 5000)
+  public void testJvmShardsAreNotPolled() throws Exception {
+    final String[] endpoints = {"jvm://sharded-pub-sub-0", "jvm://sharded-pub-sub-1"};
+    try (final ZShardedPublisher pub = new ZShardedPublisher(endpoints);
+         final ZShardedSubscriber sub = new ZShardedSubscriber(endpoints)) {
+      sub.subscribePrefix(bytes(""));
+      assertNull(sub.receiveMessage(50));
+
+      // Published once the subscriber is waiting without a timeout
+      final Thread publisher = new Thread() {
+        @Override
+        public void run() {
+          try {
+            Thread.sleep(100);
+          } catch (InterruptedException e) {
+            return;
+          }
+          for (int i = 0; i < 10; i++) {
+            pub.send(bytes("topic" + i), bytes(Integer.toString(i)));
+          }
+        }
+      };
+      publisher.start();
+      final Set<String> received = new HashSet<String>();
+      for (int i = 0; i < 10; i++) {
+        received.add(string(sub.receiveMessage(-1).pop()));
+      }
+      publisher.join();
+      assertEquals(10, received.size());
+      assertNull(sub.receiveMessage(50));
+    }
+  }
+}
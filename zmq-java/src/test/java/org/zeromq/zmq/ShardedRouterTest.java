@@ -0,0 +1,65 @@
+package org.zeromq.zmq;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.zeromq.zmq.ZMQ.ZMQ_DEALER;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class ShardedRouterTest {
+  private static ZMessage keyed(final String key) {
+    final ZMessage message = new ZMessage();
+    final ZFrame frame = new ZFrame();
+    frame.wrap(key.getBytes(ZSocket.UTF8));
+    message.add(frame);
+    return message;
+  }
+
+  @Test
+  public void testAddingPeerOnlyMovesItsOwnKeys() {
+    final HashRing ring = new HashRing(ZShardedRouter.DEFAULT_VIRTUAL_NODES);
+    for (int i = 0; i < 10; i++) {
+      ring.add(new byte[] {(byte) i});
+    }
+    final byte[][] before = new byte[1000][];
+    for (int k = 0; k < before.length; k++) {
+      before[k] = ring.lookup(ByteBuffer.wrap(("key-" + k).getBytes(ZSocket.UTF8)), 0);
+    }
+    final byte[] added = {10};
+    ring.add(added);
+    int moved = 0;
+    for (int k = 0; k < before.length; k++) {
+      final byte[] after = ring.lookup(ByteBuffer.wrap(("key-" + k).getBytes(ZSocket.UTF8)), 0);
+      if (!ByteBuffer.wrap(after).equals(ByteBuffer.wrap(before[k]))) {
+        assertArrayEquals(added, after);
+        moved++;
+      }
+    }
+    assertTrue(moved > 0 && moved < 200);
+  }
+
+  @Test
+  public void testKeyAffinityAndFallback() {
+    try (final ZShardedRouter router = new ZShardedRouter(0);
+         final ZSocket worker = new ZSocket(ZMQ_DEALER)) {
+      router.bind("tcp://127.0.0.1:7240");
+      worker.connect("tcp://127.0.0.1:7240");
+      worker.sendStringUtf8("ready");
+      assertEquals("ready", router.receive().toArray(new ZFrame[2])[1].getStringUtf8(0, 5));
+      assertEquals(1, router.peers());
+
+      // Peers that have gone away are dropped and their keys fall back to the live worker
+      for (int i = 0; i < 8; i++) {
+        router.addPeer(new byte[] {'g', 'o', 'n', 'e', (byte) i});
+      }
+      for (int i = 0; i < 50; i++) {
+        assertTrue(router.send(keyed("key-" + i)));
+        assertEquals("key-" + i, worker.receiveStringUtf8());
+      }
+      assertEquals(1, router.peers());
+    }
+  }
+}
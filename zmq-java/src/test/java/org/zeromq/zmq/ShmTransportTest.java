@@ -0,0 +1,132 @@
+package org.zeromq.zmq;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.zeromq.zmq.ZMQ.ZMQ_DONTWAIT;
+import static org.zeromq.zmq.ZMQ.ZMQ_PAIR;
+import static org.zeromq.zmq.ZMQ.ZMQ_PULL;
+import static org.zeromq.zmq.ZMQ.ZMQ_PUSH;
+import static org.zeromq.zmq.ZMQ.ZMQ_SNDMORE;
+
+import org.junit.After;
+import org.junit.Test;
+import org.zeromq.ZMQException;
+
+import zmq.ZError;
+
+public class ShmTransportTest {
+  private static final String NAME = "shm-transport-test-" + System.nanoTime();
+
+  @After
+  public void deleteRing() {
+    ShmTransport.file(NAME).delete();
+  }
+
+  @Test
+  public void testPushPullAcrossRingWrap() throws Exception {
+    final int count = 20000;
+    final int size = 300;
+    try (final ZSocket pull = new ZSocket(ZMQ_PULL)) {
+      pull.bind("shm://" + NAME);
+      final Thread producer = new Thread() {
+        @Override
+        public void run() {
+          try (final ZSocket push = new ZSocket(ZMQ_PUSH)) {
+            push.connect("shm://" + NAME);
+            for (int i = 0; i < count; i++) {
+              final ZFrame frame = new ZFrame(size);
+              frame.writeInt(0, i);
+              push.sendFrame(frame, 0);
+            }
+          }
+        }
+      };
+      producer.start();
+      for (int i = 0; i < count; i++) {
+        final ZFrame frame = pull.receiveFrame();
+        assertEquals(size, frame.size());
+        assertEquals(i, frame.getInt(0));
+      }
+      producer.join();
+      assertNull(pull.receiveFrame(ZMQ_DONTWAIT));
+    }
+  }
+
+  @Test
+  public void testPairMultipart() {
+    try (final ZSocket left = new ZSocket(ZMQ_PAIR);
+         final ZSocket right = new ZSocket(ZMQ_PAIR)) {
+      left.bind("shm://" + NAME);
+      right.connect("shm://" + NAME);
+
+      left.send("key".getBytes(ZSocket.UTF8), ZMQ_SNDMORE);
+      left.sendStringUtf8("value");
+      final ZFrame key = right.receiveFrame();
+      assertTrue(key.hasMore());
+      assertEquals("key", key.getStringUtf8(0, key.size()));
+      final ZFrame value = right.receiveFrame();
+      assertFalse(value.hasMore());
+      assertEquals("value", value.getStringUtf8(0, value.size()));
+
+      right.sendStringUtf8("reply");
+      assertEquals("reply", left.receiveStringUtf8());
+    }
+  }
+
+  @Test
+  public void testReceivedFramesStayInTheRingUntilTheNextReceive() {
+    try (final ZSocket pull = new ZSocket(ZMQ_PULL); final ZSocket push = new ZSocket(ZMQ_PUSH)) {
+      pull.bind("shm://" + NAME);
+      push.connect("shm://" + NAME);
+      for (int i = 0; i < 3; i++) {
+        push.sendFrame(new ZFrame(4).writeInt(0, i), ZMQ_SNDMORE);
+        push.sendFrame(new ZFrame(4).writeInt(0, 0xdead), 0);
+      }
+      final long queued = pull.queuedBytes();
+      final ZMessage message = pull.receiveMessage();
+      assertEquals(queued, pull.queuedBytes());
+      assertTrue(message.peek().byteBuffer.isDirect());
+      assertEquals(0, message.pop().getInt(0));
+      assertEquals(0xdead, message.pop().getInt(0));
+
+      final ZFrame[] frames = new ZFrame[4];
+      assertEquals(4, pull.receiveBatch(frames, 4, 1000));
+      assertTrue(pull.queuedBytes() < queued);
+      for (int i = 0; i < 4; i++) {
+        assertEquals(i % 2 == 0 ? i / 2 + 1 : 0xdead, frames[i].getInt(0));
+      }
+      assertNull(pull.receiveFrame(ZMQ_DONTWAIT));
+      assertEquals(0, pull.queuedBytes());
+    }
+  }
+
+  @Test
+  public void testRoleIsExclusive() {
+    try (final ZSocket pull = new ZSocket(ZMQ_PULL); final ZSocket other = new ZSocket(ZMQ_PULL)) {
+      pull.bind("shm://" + NAME);
+      try {
+        other.connect("shm://" + NAME);
+        fail("a second reader attached");
+      } catch (ZMQException e) {
+        assertEquals(ZError.EADDRINUSE, e.getErrorCode());
+      }
+    }
+  }
+
+  @Test
+  public void testRingsAreResetAfterLastClose() {
+    try (final ZSocket pull = new ZSocket(ZMQ_PULL); final ZSocket push = new ZSocket(ZMQ_PUSH)) {
+      pull.bind("shm://" + NAME);
+      push.connect("shm://" + NAME);
+      push.sendStringUtf8("stale");
+    }
+    try (final ZSocket pull = new ZSocket(ZMQ_PULL)) {
+      pull.bind("shm://" + NAME);
+      assertEquals(0, pull.queuedBytes());
+      assertNull(pull.receiveFrame(ZMQ_DONTWAIT));
+    }
+  }
+}
@@ -0,0 +1,77 @@
+package org.zeromq.zmq;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.zeromq.zmq.ZMQ.ZMQ_DEALER;
+import static org.zeromq.zmq.ZMQ.ZMQ_PULL;
+import static org.zeromq.zmq.ZMQ.ZMQ_PUSH;
+import static org.zeromq.zmq.ZMQ.ZMQ_SNDMORE;
+
+import org.junit.Test;
+import org.zeromq.ZMQException;
+
+public class SocketOptionsTest {
+  @Test
+  public void testPresetIsApplied() {
+    final ZSocketOptions options = ZSocketOptions.bulkThroughput().sendHighWaterMark(5000).build();
+    try (final ZSocket socket = new ZSocket(ZMQ_DEALER, options)) {
+      assertEquals(ZMQ_DEALER, socket.getType());
+      assertEquals(5000, socket.base().getSocketOpt(ZMQ.ZMQ_SNDHWM));
+      assertEquals(100000, socket.base().getSocketOpt(ZMQ.ZMQ_RCVHWM));
+      assertEquals(30000, socket.base().getSocketOpt(ZMQ.ZMQ_LINGER));
+    }
+  }
+
+  @Test
+  public void testLingerDeliversAfterClose() {
+    try (final ZSocket push = new ZSocket(ZMQ_PUSH, ZSocketOptions.bulkThroughput().build())) {
+      push.connect("tcp://127.0.0.1:7236");
+      for (int i = 0; i < 10; i++) {
+        push.sendStringUtf8("message " + i);
+      }
+    }
+    try (final ZSocket pull =
+        new ZSocket(ZMQ_PULL, ZSocketOptions.builder().receiveTimeout(5000).build())) {
+      pull.bind("tcp://127.0.0.1:7236");
+      for (int i = 0; i < 10; i++) {
+        final byte[] message = pull.receive();
+        assertNotNull("message " + i + " was dropped on close", message);
+        assertEquals("message " + i, new String(message, ZSocket.UTF8));
+      }
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidValueIsRejected() {
+    ZSocketOptions.builder().linger(-2);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInconsistentOptionsAreRejected() {
+    ZSocketOptions.builder().reconnectInterval(1000).reconnectIntervalMax(10).build();
+  }
+
+  @Test(expected = ZMQException.class)
+  public void testEngineRejectionIsRaised() {
+    try (final ZSocket push = new ZSocket(ZMQ_PUSH)) {
+      push.subscribe(new byte[0]);
+    }
+  }
+
+  @Test
+  public void testReceiveMoreFollowsTheLastFrame() {
+    try (final ZSocket pull = new ZSocket(ZMQ_PULL, ZSocketOptions.lowLatency().build());
+         final ZSocket push = new ZSocket(ZMQ_PUSH, ZSocketOptions.lowLatency().build())) {
+      pull.bind("inproc://options-more");
+      push.connect("inproc://options-more");
+      push.sendStringUtf8("a", ZMQ_SNDMORE);
+      push.sendStringUtf8("b");
+      pull.receive();
+      assertTrue(pull.hasReceiveMore());
+      pull.receive();
+      assertFalse(pull.hasReceiveMore());
+    }
+  }
+}
@@ -0,0 +1,116 @@
+package org.zeromq.zmq;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.zeromq.zmq.ZMQ.ZMQ_PULL;
+import static org.zeromq.zmq.ZMQ.ZMQ_PUSH;
+import static org.zeromq.zmq.ZMQ.ZMQ_SNDMORE;
+import static org.zeromq.zmq.ZMQ.ZMQ_SUB;
+
+import java.io.File;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.zeromq.ZMQException;
+
+public class SpillTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testSpilledMessagesAreDrainedInOrder() throws Exception {
+    final File dir = folder.newFolder();
+    try (final ZSocket push = new ZSocket(ZMQ_PUSH);
+         final ZSocket pull = new ZSocket(ZMQ_PULL)) {
+      push.enableSpill(dir, 512);
+      push.bind("inproc://spill-order");
+      for (int i = 0; i < 100; i++) {
+        push.sendStringUtf8("part", ZMQ_SNDMORE);
+        push.sendStringUtf8(Integer.toString(i));
+      }
+      assertTrue(push.spilledBytes() > 0);
+
+      pull.connect("inproc://spill-order");
+      int received = 0;
+      while (received < 100) {
+        push.drainSpill();
+        final byte[] first = pull.receive(ZMQ.ZMQ_DONTWAIT);
+        if (first == null) {
+          Thread.sleep(1);
+          continue;
+        }
+        assertEquals("part", new String(first, ZSocket.UTF8));
+        assertTrue(pull.hasReceiveMore());
+        assertEquals(Integer.toString(received++), pull.receiveStringUtf8());
+      }
+      assertEquals(0, push.spilledBytes());
+      // Only the segment still being written to is kept
+      assertEquals(1, dir.list().length);
+    }
+  }
+
+  @Test
+  public void testSpillSurvivesRestart() throws Exception {
+    final File dir = folder.newFolder();
+    try (final ZSocket push = new ZSocket(ZMQ_PUSH)) {
+      push.enableSpill(dir, 4096);
+      push.bind("inproc://spill-restart");
+      for (int i = 0; i < 10; i++) {
+        push.sendStringUtf8(Integer.toString(i));
+      }
+      push.sendStringUtf8("unfinished", ZMQ_SNDMORE);
+    }
+    assertFalse(dir.list().length == 0);
+
+    try (final ZSocket push = new ZSocket(ZMQ_PUSH);
+         final ZSocket pull = new ZSocket(ZMQ_PULL)) {
+      push.enableSpill(dir, 4096);
+      push.bind("inproc://spill-restarted");
+      pull.connect("inproc://spill-restarted");
+      push.sendStringUtf8("10");
+      for (int i = 0; i <= 10; i++) {
+        assertEquals(Integer.toString(i), pull.receiveStringUtf8());
+        assertFalse(pull.hasReceiveMore());
+      }
+    }
+  }
+
+  @Test
+  public void testMessagesAreNotSplitAcrossSegments() throws Exception {
+    final File dir = folder.newFolder();
+    // Room for three 40 byte frames and their record headers, and one more frame
+    try (final ZSocket push = new ZSocket(ZMQ_PUSH)) {
+      push.enableSpill(dir, 256);
+      push.bind("inproc://spill-segments");
+      for (int i = 0; i < 3; i++) {
+        push.sendStringUtf8(String.format("%040d", i), i < 2 ? ZMQ_SNDMORE : 0);
+      }
+      // Left unfinished after its second frame rolled over to a new segment
+      push.sendStringUtf8(String.format("%040d", 3), ZMQ_SNDMORE);
+      push.sendStringUtf8(String.format("%040d", 4), ZMQ_SNDMORE);
+    }
+
+    try (final ZSocket push = new ZSocket(ZMQ_PUSH);
+         final ZSocket pull = new ZSocket(ZMQ_PULL)) {
+      push.enableSpill(dir, 256);
+      push.bind("inproc://spill-segments-restarted");
+      pull.connect("inproc://spill-segments-restarted");
+      push.sendStringUtf8("done");
+      for (int i = 0; i < 3; i++) {
+        assertEquals(String.format("%040d", i), pull.receiveStringUtf8());
+        assertEquals(i < 2, pull.hasReceiveMore());
+      }
+      assertEquals("done", pull.receiveStringUtf8());
+      assertFalse(pull.hasReceiveMore());
+    }
+  }
+
+  @Test(expected = ZMQException.class)
+  public void testOnlyPushAndDealerSpill() throws Exception {
+    try (final ZSocket sub = new ZSocket(ZMQ_SUB)) {
+      sub.enableSpill(folder.newFolder());
+    }
+  }
+}
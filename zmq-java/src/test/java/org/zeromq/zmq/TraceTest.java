@@ -0,0 +1,83 @@
+package org.zeromq.zmq;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.zeromq.zmq.ZMQ.ZMQ_PULL;
+import static org.zeromq.zmq.ZMQ.ZMQ_PUSH;
+import static org.zeromq.zmq.ZMQ.ZMQ_SNDMORE;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TraceTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testFramesAreRecorded() throws Exception {
+    final ZTrace trace = new ZTrace(16, 4);
+    try (final ZSocket pull = new ZSocket(ZMQ_PULL); final ZSocket push = new ZSocket(ZMQ_PUSH)) {
+      push.setTrace(trace);
+      pull.setTrace(trace);
+      pull.bind("inproc://trace-record");
+      push.connect("inproc://trace-record");
+      push.sendStringUtf8("hello", ZMQ_SNDMORE);
+      push.sendStringUtf8("hi");
+      assertEquals("hello", pull.receiveStringUtf8());
+      assertEquals("hi", pull.receiveStringUtf8());
+    }
+    final StringBuilder out = new StringBuilder();
+    assertEquals(4, trace.dump(out));
+    final String[] lines = out.toString().split("\n");
+    assertTrue(lines[0], lines[0].endsWith(" send 5B SNDMORE 68656C6C |hell|..."));
+    assertTrue(lines[1], lines[1].endsWith(" send 2B 6869 |hi|"));
+    assertTrue(lines[2], lines[2].endsWith(" recv 5B MORE 68656C6C |hell|..."));
+    assertTrue(lines[3], lines[3].endsWith(" recv 2B 6869 |hi|"));
+  }
+
+  @Test
+  public void testSampleRateAndRingCapacity() throws Exception {
+    final ZTrace trace = new ZTrace(8, 0);
+    try (final ZSocket pull = new ZSocket(ZMQ_PULL); final ZSocket push = new ZSocket(ZMQ_PUSH)) {
+      push.setTrace(trace);
+      pull.bind("inproc://trace-sample");
+      push.connect("inproc://trace-sample");
+      trace.setSampleEvery(0);
+      for (int i = 0; i < 10; i++) {
+        push.send(new byte[1]);
+      }
+      assertEquals(0, trace.recorded());
+      trace.setSampleEvery(2);
+      for (int i = 0; i < 20; i++) {
+        push.send(new byte[1]);
+      }
+      assertEquals(10, trace.recorded());
+    }
+    assertEquals(8, trace.dump(new StringBuilder()));
+  }
+
+  @Test
+  public void testStreamToFile() throws Exception {
+    final File file = new File(folder.getRoot(), "trace.log");
+    final ZTrace trace = new ZTrace(4, 8);
+    trace.streamTo(file);
+    try (final ZSocket pull = new ZSocket(ZMQ_PULL); final ZSocket push = new ZSocket(ZMQ_PUSH)) {
+      pull.setTrace(trace);
+      pull.bind("inproc://trace-stream");
+      push.connect("inproc://trace-stream");
+      for (int i = 0; i < 3; i++) {
+        push.sendStringUtf8("frame" + i);
+        pull.receive();
+      }
+    }
+    trace.close();
+    final String log = new String(Files.readAllBytes(file.toPath()), Charset.forName("US-ASCII"));
+    assertEquals(3, log.split("\n").length);
+    assertTrue(log, log.contains("|frame2|"));
+  }
+}
@@ -0,0 +1,60 @@
+package org.zeromq.zmq;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.zeromq.zmq.ZMQ.ZMQ_DEALER;
+import static org.zeromq.zmq.ZMQ.ZMQ_PULL;
+import static org.zeromq.zmq.ZMQ.ZMQ_PUSH;
+
+import org.junit.Test;
+
+public class WarmupTest {
+  @Test
+  public void testConnectAndAwait() {
+    try (final ZSocket pull = new ZSocket(ZMQ_PULL); final ZSocket push = new ZSocket(ZMQ_PUSH)) {
+      pull.bind("tcp://127.0.0.1:7260");
+      assertTrue(push.connectAndAwait("tcp://127.0.0.1:7260", 5000));
+      push.sendStringUtf8("ready");
+      assertEquals("ready", pull.receiveStringUtf8());
+    }
+  }
+
+  @Test
+  public void testConnectAndAwaitTimesOut() {
+    try (final ZSocket dealer = new ZSocket(ZMQ_DEALER)) {
+      assertFalse(dealer.connectAndAwait("tcp://127.0.0.1:7261", 100));
+    }
+  }
+
+  @Test
+  public void testWarmUpStartsTheContext() {
+    ZContext.warmUp(100, 32);
+    assertTrue(ZContext.isStarted());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testIoThreadsAreFixedOnceStarted() {
+    ZContext.start();
+    ZContext.setIoThreads(4);
+  }
+
+  @Test
+  public void testFramePool() {
+    final ZFramePool pool = new ZFramePool(128, 4);
+    assertEquals(4, pool.prime(10));
+    final ZFrame frame = pool.acquire(16);
+    assertEquals(16, frame.size());
+    assertEquals(3, pool.size());
+    pool.release(frame);
+    assertSame(frame, pool.acquire(128));
+
+    // A frame whose buffer a receive replaced gets a fresh one
+    frame.wrap(new byte[8]);
+    pool.release(frame);
+    final ZFrame reused = pool.acquire(64);
+    assertEquals(64, reused.size());
+    assertEquals(128, reused.byteBuffer.capacity());
+  }
+}